@@ -15,23 +15,154 @@
  */
 package com.theoriginalbit.peripheral;
 
+import com.google.common.collect.Sets;
 import com.theoriginalbit.peripheral.api.converter.IConversionRegistry;
+import com.theoriginalbit.peripheral.api.event.BackpressurePolicy;
+import com.theoriginalbit.peripheral.api.event.IEventDispatcher;
 import com.theoriginalbit.peripheral.converter.TypeConverter;
+import com.theoriginalbit.peripheral.event.EventDispatcher;
+import com.theoriginalbit.peripheral.mount.BlockCache;
+import com.theoriginalbit.peripheral.mount.ChunkPool;
+import com.theoriginalbit.peripheral.mount.MountManager;
+import com.theoriginalbit.peripheral.mount.MountPool;
+import com.theoriginalbit.peripheral.mount.MountStatistics;
+import com.theoriginalbit.peripheral.task.CallWatchdog;
+import com.theoriginalbit.peripheral.task.MainThreadExecutor;
+import com.theoriginalbit.peripheral.task.OffloadExecutor;
+import com.theoriginalbit.peripheral.task.TaskEvents;
 import com.theoriginalbit.peripheral.util.Log;
+import com.theoriginalbit.peripheral.wrapper.ModelWarmUp;
+import cpw.mods.fml.common.FMLCommonHandler;
 import cpw.mods.fml.common.Loader;
+import cpw.mods.fml.relauncher.ReflectionHelper;
 import dan200.computercraft.api.ComputerCraftAPI;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraftforge.common.MinecraftForge;
+
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Joshua Asbury (@theoriginalbit)
  */
 public final class PeripheralFramework {
     private static final TypeConverter CONVERTER = new TypeConverter();
+    private static final PeripheralProvider PROVIDER = new PeripheralProvider();
+    private static final MountManager MOUNTS = new MountManager();
+    private static final MountPool MOUNT_POOL = new MountPool();
+    private static final BlockCache BLOCK_CACHE = new BlockCache(BlockCache.DEFAULT_SIZE);
+    private static final ChunkPool CHUNK_POOL = new ChunkPool(ChunkPool.DEFAULT_LIMIT, ChunkPool.DEFAULT_RETAINED);
+    private static final EventDispatcher EVENTS = new EventDispatcher(CONVERTER);
+    private static final MainThreadExecutor MAIN_THREAD = new MainThreadExecutor();
+    private static final CallWatchdog WATCHDOG = new CallWatchdog();
+    private static final OffloadExecutor OFFLOAD = new OffloadExecutor(OffloadExecutor.DEFAULT_THREADS, OffloadExecutor.DEFAULT_QUEUE);
+    private static final Set<Class<?>> REGISTERED_PERIPHERALS = Sets.newLinkedHashSet();
+
+    static {
+        // the caller of a task waits for its task_complete, so it must never be shed
+        EVENTS.setPolicy(TaskEvents.TASK_COMPLETE, BackpressurePolicy.BLOCK_PRODUCER);
+    }
 
     public static void init() {
         if (Loader.isModLoaded("ComputerCraft")) {
             Log.info("Registering peripheral provider for ComputerCraft");
-            ComputerCraftAPI.registerPeripheralProvider(new PeripheralProvider());
+            ComputerCraftAPI.registerPeripheralProvider(PROVIDER);
+            MinecraftForge.EVENT_BUS.register(PROVIDER);
+            MinecraftForge.EVENT_BUS.register(MOUNTS);
+            MinecraftForge.EVENT_BUS.register(MOUNT_POOL);
+            FMLCommonHandler.instance().bus().register(MOUNT_POOL);
+            // the main thread tasks run before the dispatcher flushes, so their results are delivered the same tick
+            MinecraftForge.EVENT_BUS.register(MAIN_THREAD);
+            FMLCommonHandler.instance().bus().register(MAIN_THREAD);
+            MinecraftForge.EVENT_BUS.register(EVENTS);
+            FMLCommonHandler.instance().bus().register(EVENTS);
+        }
+    }
+
+    /**
+     * Optional, builds the models of every known peripheral class ahead of time so the first call to each peripheral
+     * doesn't have to. Known peripherals are the registered TileEntity classes annotated with Peripheral and anything
+     * supplied to {@link #registerPeripheral(Class)}; call this during FMLPostInitializationEvent.
+     */
+    public static void postInit() {
+        final Set<Class<?>> candidates = Sets.newLinkedHashSet();
+        try {
+            final Map<Class<?>, String> tiles = ReflectionHelper.getPrivateValue(TileEntity.class, null, "classToNameMap", "field_145853_j");
+            candidates.addAll(tiles.keySet());
+        } catch (Exception e) {
+            Log.warn("Unable to find the registered TileEntity classes, only explicitly registered peripherals will be warmed up");
         }
+        synchronized (REGISTERED_PERIPHERALS) {
+            candidates.addAll(REGISTERED_PERIPHERALS);
+        }
+        ModelWarmUp.warmUp(candidates);
+    }
+
+    /**
+     * Registers a peripheral class to be warmed up by {@link #postInit()}, needed for peripherals that aren't
+     * TileEntities such as those returned from an IPeripheralHolder or used by turtle upgrades.
+     *
+     * @param peripheral the class annotated with Peripheral
+     */
+    public static void registerPeripheral(Class<?> peripheral) {
+        synchronized (REGISTERED_PERIPHERALS) {
+            REGISTERED_PERIPHERALS.add(peripheral);
+        }
+    }
+
+    public static PeripheralProvider getPeripheralProvider() {
+        return PROVIDER;
+    }
+
+    public static MountManager getMountManager() {
+        return MOUNTS;
+    }
+
+    public static MountPool getMountPool() {
+        return MOUNT_POOL;
+    }
+
+    /**
+     * @return the I/O computers have done through framework mounts, by mount and by computer
+     */
+    public static MountStatistics getMountStatistics() {
+        return MOUNTS.getStatistics();
+    }
+
+    public static BlockCache getBlockCache() {
+        return BLOCK_CACHE;
+    }
+
+    public static ChunkPool getChunkPool() {
+        return CHUNK_POOL;
+    }
+
+    /**
+     * @return the dispatcher delivering events at the end of each server tick, coalescing them where asked to
+     */
+    public static IEventDispatcher getEventDispatcher() {
+        return EVENTS;
+    }
+
+    /**
+     * @return the executor running MainThread functions in a batch at the end of each server tick
+     */
+    public static MainThreadExecutor getMainThreadExecutor() {
+        return MAIN_THREAD;
+    }
+
+    /**
+     * @return the watchdog interrupting function calls that run past their deadline
+     */
+    public static CallWatchdog getCallWatchdog() {
+        return WATCHDOG;
+    }
+
+    /**
+     * @return the executor running Offload functions on worker threads
+     */
+    public static OffloadExecutor getOffloadExecutor() {
+        return OFFLOAD;
     }
 
     public static IConversionRegistry getConversionRegistry() {
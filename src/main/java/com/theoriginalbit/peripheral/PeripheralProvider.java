@@ -16,31 +16,112 @@
 package com.theoriginalbit.peripheral;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.MapMaker;
 import com.theoriginalbit.peripheral.api.peripheral.IPeripheralHolder;
 import com.theoriginalbit.peripheral.api.peripheral.Peripheral;
 import com.theoriginalbit.peripheral.util.Validation;
 import com.theoriginalbit.peripheral.wrapper.WrapperComputer;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
 import dan200.computercraft.api.peripheral.IPeripheral;
 import dan200.computercraft.api.peripheral.IPeripheralProvider;
+import net.minecraft.block.Block;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.world.World;
+import net.minecraftforge.event.world.BlockEvent;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
 
+import java.util.HashMap;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Joshua Asbury (@theoriginalbit)
  */
 public final class PeripheralProvider implements IPeripheralProvider {
     private final WeakHashMap<TileEntity, WrapperComputer> PERIPHERAL_CACHE = new WeakHashMap<TileEntity, WrapperComputer>();
+    /*
+     * IPeripheralHolders (e.g. multiblocks) may all return the same peripheral object, so wrappers are also cached by
+     * the identity of the peripheral they wrap. Weak keys compare by identity and the weak values let the wrapper be
+     * collected once no TileEntity in PERIPHERAL_CACHE references it anymore.
+     */
+    private final ConcurrentMap<Object, WrapperComputer> SHARED_CACHE = new MapMaker().weakKeys().weakValues().makeMap();
+    private final WeakHashMap<World, ResolutionMemo> RESOLUTION_MEMOS = new WeakHashMap<World, ResolutionMemo>();
+    private final AtomicLong lookupCount = new AtomicLong();
+    private final AtomicLong absorbedCount = new AtomicLong();
 
     /**
      * {@inheritDoc}
      */
     @Override
     public final IPeripheral getPeripheral(World world, int x, int y, int z, int side) {
-        TileEntity tile = world.getTileEntity(x, y, z);
+        lookupCount.incrementAndGet();
+
+        // neighbour change storms ask for the same position many times a tick, answer repeats from the memo
+        final ResolutionMemo memo = getMemo(world);
+        final long tick = world.getTotalWorldTime();
+        final long position = ResolutionMemo.pack(x, y, z);
+        final Block block = world.getBlock(x, y, z);
+        synchronized (memo) {
+            final ResolutionMemo.Entry entry = memo.get(tick, position, block);
+            if (entry != null) {
+                absorbedCount.incrementAndGet();
+                return entry.peripheral;
+            }
+        }
+
+        final TileEntity tile = world.getTileEntity(x, y, z);
+        final IPeripheral peripheral = resolvePeripheral(tile);
+        synchronized (memo) {
+            memo.put(tick, position, block, tile, peripheral);
+        }
+        return peripheral;
+    }
+
+    /**
+     * @return how many times ComputerCraft has asked this provider for a peripheral
+     */
+    public long getLookupCount() {
+        return lookupCount.get();
+    }
+
+    /**
+     * @return how many of those lookups were answered from the per-tick memo without resolving the TileEntity
+     */
+    public long getAbsorbedLookupCount() {
+        return absorbedCount.get();
+    }
+
+    @SubscribeEvent
+    public void onBlockPlace(BlockEvent.PlaceEvent event) {
+        invalidate(event.world, event.x, event.y, event.z);
+    }
 
-        if (tile.isInvalid()) {
+    @SubscribeEvent
+    public void onBlockBreak(BlockEvent.BreakEvent event) {
+        invalidate(event.world, event.x, event.y, event.z);
+    }
+
+    @SubscribeEvent
+    public void onChunkLoad(ChunkEvent.Load event) {
+        invalidate(event.world);
+    }
+
+    @SubscribeEvent
+    public void onChunkUnload(ChunkEvent.Unload event) {
+        invalidate(event.world);
+    }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        synchronized (RESOLUTION_MEMOS) {
+            RESOLUTION_MEMOS.remove(event.world);
+        }
+    }
+
+    private IPeripheral resolvePeripheral(TileEntity tile) {
+        if (tile == null || tile.isInvalid()) {
             return null;
         }
 
@@ -63,7 +144,7 @@ public final class PeripheralProvider implements IPeripheralProvider {
             Preconditions.checkArgument(isLuaPeripheral(peripheral), "The peripheral returned from the IPeripheralHolder was not annotated with Peripheral");
             // wrap the return
             if (Validation.isEnabled(peripheral.getClass())) {
-                wrapper = new WrapperComputer(peripheral);
+                wrapper = getSharedWrapper(peripheral);
             }
         } else if (Validation.isEnabled(tile.getClass())) { // if the TileEntity is annotated as a Peripheral
             wrapper = new WrapperComputer(tile);
@@ -78,7 +159,106 @@ public final class PeripheralProvider implements IPeripheralProvider {
         return null;
     }
 
+    private ResolutionMemo getMemo(World world) {
+        synchronized (RESOLUTION_MEMOS) {
+            ResolutionMemo memo = RESOLUTION_MEMOS.get(world);
+            if (memo == null) {
+                memo = new ResolutionMemo();
+                RESOLUTION_MEMOS.put(world, memo);
+            }
+            return memo;
+        }
+    }
+
+    private void invalidate(World world, int x, int y, int z) {
+        final ResolutionMemo memo;
+        synchronized (RESOLUTION_MEMOS) {
+            memo = RESOLUTION_MEMOS.get(world);
+        }
+        if (memo != null) {
+            synchronized (memo) {
+                memo.remove(ResolutionMemo.pack(x, y, z));
+            }
+        }
+    }
+
+    private void invalidate(World world) {
+        final ResolutionMemo memo;
+        synchronized (RESOLUTION_MEMOS) {
+            memo = RESOLUTION_MEMOS.get(world);
+        }
+        if (memo != null) {
+            synchronized (memo) {
+                memo.clear();
+            }
+        }
+    }
+
+    private WrapperComputer getSharedWrapper(Object peripheral) {
+        // constructing a wrapper injects its computer list into the peripheral, so only ever construct one
+        synchronized (SHARED_CACHE) {
+            WrapperComputer wrapper = SHARED_CACHE.get(peripheral);
+            if (wrapper == null) {
+                wrapper = new WrapperComputer(peripheral);
+                SHARED_CACHE.put(peripheral, wrapper);
+            }
+            return wrapper;
+        }
+    }
+
     private boolean isLuaPeripheral(Object peripheral) {
         return peripheral.getClass().isAnnotationPresent(Peripheral.class);
     }
-}
\ No newline at end of file
+
+    /**
+     * The peripherals resolved for a single world during its current tick
+     */
+    private static final class ResolutionMemo {
+        private final HashMap<Long, Entry> entries = new HashMap<Long, Entry>();
+        private long tick = Long.MIN_VALUE;
+
+        private static long pack(int x, int y, int z) {
+            return ((long) x & 0x3FFFFFF) << 38 | ((long) z & 0x3FFFFFF) << 12 | (long) y & 0xFFF;
+        }
+
+        private Entry get(long currentTick, long position, Block block) {
+            if (currentTick != tick) {
+                return null;
+            }
+            final Entry entry = entries.get(position);
+            // a block changed without an event (e.g. placed by a machine) or the tile went away, resolve it again
+            if (entry == null || entry.block != block || (entry.tile != null && entry.tile.isInvalid())) {
+                return null;
+            }
+            return entry;
+        }
+
+        private void put(long currentTick, long position, Block block, TileEntity tile, IPeripheral peripheral) {
+            if (currentTick != tick) {
+                entries.clear();
+                tick = currentTick;
+            }
+            entries.put(position, new Entry(block, tile, peripheral));
+        }
+
+        private void remove(long position) {
+            entries.remove(position);
+        }
+
+        private void clear() {
+            entries.clear();
+        }
+
+        private static final class Entry {
+            private final Block block;
+            private final TileEntity tile;
+            private final IPeripheral peripheral;
+
+            private Entry(Block block, TileEntity tile, IPeripheral peripheral) {
+                this.block = block;
+                this.tile = tile;
+                this.peripheral = peripheral;
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.api.event;
+
+/**
+ * What the {@link IEventDispatcher} does with an event when the computer it is for already has a full backlog
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public enum BackpressurePolicy {
+    /**
+     * Removes the oldest waiting event of the same name to make room, the new event is dropped if there isn't one
+     */
+    DROP_OLDEST,
+    /**
+     * Drops the new event
+     */
+    DROP_NEWEST,
+    /**
+     * Gives the newest waiting event of the same name the new event's arguments, the new event is dropped if there
+     * isn't one
+     */
+    MERGE,
+    /**
+     * Makes the thread queueing the event wait for room. The event is never dropped, on the server thread, before the
+     * server has ticked, or if no room is made in time, it is queued over the limit instead.
+     */
+    BLOCK_PRODUCER
+}
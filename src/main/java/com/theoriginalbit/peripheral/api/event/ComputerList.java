@@ -21,6 +21,10 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
+ * Marks a field to be assigned the computers the peripheral is attached to. The field should be an
+ * {@link com.theoriginalbit.peripheral.api.util.AttachedComputers} or any type it can be assigned to, such as List;
+ * ArrayList fields are still supported but are given a new copy on every attach and detach.
+ *
  * @author Joshua Asbury (@theoriginalbit)
  */
 @Target(ElementType.FIELD)
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.api.event;
+
+import com.theoriginalbit.peripheral.api.util.TypeConversionException;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+
+/**
+ * Queues events on computers at the end of the server tick instead of straight away. Coalesced events are identified
+ * by their name and a source object, within one tick only the latest arguments for each name and source are delivered
+ * to each computer, in the position the first of them was queued in.
+ * <p/>
+ * Arguments are converted to Lua types when they are queued.
+ * <p/>
+ * ComputerCraft silently drops events once a computer's queue is full, so the dispatcher estimates how many events
+ * each computer has yet to handle and holds back anything over the limit for later ticks. When a computer's backlog is
+ * also full the {@link BackpressurePolicy} of the event's name decides what is shed.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public interface IEventDispatcher {
+    /**
+     * Queues an event to be delivered at the end of the tick
+     */
+    void queueEvent(IComputerAccess computer, String event, Object... args) throws TypeConversionException;
+
+    /**
+     * Queues an event to be delivered at the end of the tick, its arguments are already Lua values and aren't
+     * converted again
+     */
+    void queueConverted(IComputerAccess computer, String event, Object[] args);
+
+    /**
+     * Queues an event that replaces any event with the same name and source queued on the computer this tick
+     *
+     * @param source what the event is about, such as the peripheral or a side of it; compared with equals
+     */
+    void queueCoalesced(IComputerAccess computer, String event, Object source, Object... args) throws TypeConversionException;
+
+    /**
+     * Queues a coalesced event on each of the computers, the arguments are only converted once
+     */
+    void broadcastCoalesced(Iterable<IComputerAccess> computers, String event, Object source, Object... args) throws TypeConversionException;
+
+    /**
+     * @param event  the name of the event
+     * @param policy what to do with the event when a computer's backlog is full
+     */
+    void setPolicy(String event, BackpressurePolicy policy);
+
+    /**
+     * @return how many events have been delivered to computers
+     */
+    long getDeliveredCount();
+
+    /**
+     * @return how many events were replaced by a later event with the same name and source before being delivered
+     */
+    long getMergedCount();
+
+    /**
+     * @return how many times the policy has been applied to an event because a computer's backlog was full
+     */
+    long getPolicyCount(BackpressurePolicy policy);
+}
@@ -16,6 +16,7 @@
 package com.theoriginalbit.peripheral.api.event;
 
 import com.theoriginalbit.peripheral.api.filesystem.IMount;
+import com.theoriginalbit.peripheral.api.filesystem.IMountFactory;
 
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
@@ -28,5 +29,29 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Mount {
-    Class<? extends IMount>[] value();
+    Class<? extends IMount>[] value() default {};
+
+    /**
+     * Factories creating a separate mount for every computer the peripheral is attached to
+     */
+    Class<? extends IMountFactory>[] factories() default {};
+
+    /**
+     * Shared mounts and factories are created once per class (and {@link #key()}), used by every peripheral declaring
+     * them and closed a while after the last of those peripherals detaches. Unshared mounts, the default, are created
+     * for each peripheral instance when its first computer attaches and closed when its last one detaches, which
+     * mounts that keep per-peripheral state need.
+     */
+    boolean shared() default false;
+
+    /**
+     * Peripherals that declare the same mount class with different keys get separate shared instances
+     */
+    String key() default "";
+
+    /**
+     * Reads the files of the mounts through the framework's shared block cache, for mounts that many computers read
+     * the same files from. Writes made through a cached writable mount invalidate the cached blocks.
+     */
+    boolean cached() default false;
 }
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.api.filesystem;
+
+import dan200.computercraft.api.peripheral.IComputerAccess;
+
+import java.io.IOException;
+
+/**
+ * Creates a separate mount for every computer, for mounts with per-computer contents. A mount is created when the
+ * location is first mounted to a computer and released when it is unmounted again.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public interface IMountFactory {
+    String getMountLocation();
+
+    /**
+     * @param computer the computer the mount is for
+     * @return the mount, mounted writable if it is a {@link dan200.computercraft.api.filesystem.IWritableMount}
+     * @throws IOException if the mount couldn't be created
+     */
+    dan200.computercraft.api.filesystem.IMount createMount(IComputerAccess computer) throws IOException;
+
+    /**
+     * @param computer the computer the mount was created for
+     * @param mount    the mount that has been unmounted from the computer
+     */
+    void releaseMount(IComputerAccess computer, dan200.computercraft.api.filesystem.IMount mount);
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.api.lua;
+
+import dan200.computercraft.api.lua.LuaException;
+
+/**
+ * Lets a long running {@link Function} do its work in slices, yielding the computer between them so it is neither
+ * killed for running too long without yielding nor holding up other computers. Add it as a parameter of the method
+ * and the framework will provide it, it isn't counted as a Lua argument.
+ * <p/>
+ * While yielded the calling coroutine only waits for its own resume event, the same as ComputerCraft does while
+ * waiting on a main thread task, so it doesn't see the other events the computer receives meanwhile. Coroutines
+ * running beside it under the parallel API still get them.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public interface ISliceContext {
+    /**
+     * @return true once the current slice has run for its full length
+     */
+    boolean shouldYield();
+
+    /**
+     * Yields the computer if the current slice has run for its full length
+     *
+     * @throws LuaException if the computer was terminated while yielded
+     */
+    void checkpoint() throws LuaException, InterruptedException;
+
+    /**
+     * Yields the computer and starts a new slice once it resumes
+     *
+     * @throws LuaException if the computer was terminated while yielded
+     */
+    void nextSlice() throws LuaException, InterruptedException;
+
+    /**
+     * Queues a {@code peripheral_progress} event on the computer with the peripheral's attachment name followed by
+     * the arguments, converted to Lua types
+     */
+    void progress(Object... args) throws LuaException;
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.api.lua;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs a {@link Function} on the server thread instead of the computer's thread, for methods that touch the world.
+ * The arguments are still converted on the computer's thread. The calls of every framework peripheral are run in one
+ * batch at the end of the server tick.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MainThread {
+    /**
+     * When false the computer waits for the method and gets its results. When true the method returns a task id
+     * straight away and the computer is sent a {@code task_complete} event with the id, whether it succeeded, and the
+     * results or error once the method has run.
+     */
+    boolean async() default false;
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.api.lua;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long a {@link Function} may run before its thread is interrupted and the computer gets an error. Without it the
+ * framework's default deadline is used, which is off unless one has been configured, and never applies to methods
+ * taking an ILuaContext as they may wait on events. Time a method spends yielded through its {@link ISliceContext}
+ * doesn't count, each slice gets the full deadline.
+ * <p/>
+ * For a method returning a {@link java.util.concurrent.Future} it is also how long the computer waits for the future
+ * before cancelling it.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Timeout {
+    long value();
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+}
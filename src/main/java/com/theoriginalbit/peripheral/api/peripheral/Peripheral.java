@@ -27,4 +27,11 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Peripheral {
     String value();
+
+    /**
+     * Lazy peripherals only resolve their type and method names when wrapped; mounts are created and
+     * {@link com.theoriginalbit.peripheral.api.event.ComputerList} fields are assigned on the first attach or method
+     * call instead. Useful for peripherals that are placed in large numbers but rarely used from Lua.
+     */
+    boolean lazy() default false;
 }
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.api.util;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+import com.theoriginalbit.peripheral.api.converter.IConversionRegistry;
+import com.theoriginalbit.peripheral.api.event.IEventDispatcher;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The computers a peripheral is attached to, as assigned to
+ * {@link com.theoriginalbit.peripheral.api.event.ComputerList} fields. Computers attach and detach from their own
+ * threads while the peripheral usually iterates on the server thread, so the list is copy-on-write: iterating never
+ * sees a change part way through and never throws a ConcurrentModificationException. Membership checks are constant
+ * time.
+ * <p/>
+ * The list is read-only to the peripheral, only the framework attaches and detaches computers.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class AttachedComputers extends AbstractList<IComputerAccess> implements RandomAccess {
+    private static final IComputerAccess[] EMPTY = new IComputerAccess[0];
+
+    private final IConversionRegistry converter;
+    private final IEventDispatcher dispatcher;
+    private final ConcurrentMap<IComputerAccess, Boolean> index = Maps.newConcurrentMap();
+    private volatile IComputerAccess[] snapshot = EMPTY;
+
+    public AttachedComputers(IConversionRegistry converter, IEventDispatcher dispatcher) {
+        this.converter = converter;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Queues an event on every attached computer through the event dispatcher, so it is delivered at the end of the
+     * tick and held back while a computer's queue is full. The arguments are converted to Lua types once and the same
+     * values are given to every computer, a computer that has detached by then is skipped.
+     *
+     * @param event the name of the event
+     * @param args  the arguments of the event
+     * @return the number of computers the event was queued for
+     * @throws TypeConversionException if an argument couldn't be converted to a Lua type
+     */
+    public int broadcast(String event, Object... args) throws TypeConversionException {
+        final IComputerAccess[] computers = snapshot;
+        if (computers.length == 0) {
+            return 0;
+        }
+        final Object[] converted = new Object[args.length];
+        for (int i = 0; i < args.length; ++i) {
+            converted[i] = converter.toLua(args[i]);
+        }
+        for (IComputerAccess computer : computers) {
+            dispatcher.queueConverted(computer, event, converted);
+        }
+        return computers.length;
+    }
+
+    /**
+     * @return the attached computers at this moment, the array is shared and must not be modified
+     */
+    public IComputerAccess[] snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public IComputerAccess get(int index) {
+        return snapshot[index];
+    }
+
+    @Override
+    public int size() {
+        return snapshot.length;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o != null && index.containsKey(o);
+    }
+
+    @Override
+    public Iterator<IComputerAccess> iterator() {
+        return Iterators.forArray(snapshot);
+    }
+
+    /**
+     * Used by the framework when a computer attaches
+     *
+     * @return false if the computer was already attached
+     */
+    public synchronized boolean attach(IComputerAccess computer) {
+        if (index.putIfAbsent(computer, Boolean.TRUE) != null) {
+            return false;
+        }
+        final IComputerAccess[] current = snapshot;
+        final IComputerAccess[] next = new IComputerAccess[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = computer;
+        snapshot = next;
+        return true;
+    }
+
+    /**
+     * Used by the framework when a computer detaches
+     *
+     * @return false if the computer wasn't attached
+     */
+    public synchronized boolean detach(IComputerAccess computer) {
+        if (index.remove(computer) == null) {
+            return false;
+        }
+        final IComputerAccess[] current = snapshot;
+        final IComputerAccess[] next = new IComputerAccess[current.length - 1];
+        int i = 0;
+        for (IComputerAccess existing : current) {
+            if (!existing.equals(computer)) {
+                next[i++] = existing;
+            }
+        }
+        snapshot = next;
+        return true;
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.api.util;
+
+import com.google.common.util.concurrent.AbstractFuture;
+
+/**
+ * A result a {@link com.theoriginalbit.peripheral.api.lua.Function} can return before it is ready. The computer waits
+ * for it without holding a computer thread and gets the value converted the same as any other return value, or the
+ * message of the exception it was failed with. If the computer stops waiting, such as when it is terminated or the
+ * timeout passes, the future is cancelled.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public class LuaFuture<T> extends AbstractFuture<T> {
+    public static <T> LuaFuture<T> create() {
+        return new LuaFuture<T>();
+    }
+
+    @Override
+    public boolean set(T value) {
+        return super.set(value);
+    }
+
+    @Override
+    public boolean setException(Throwable throwable) {
+        return super.setException(throwable);
+    }
+}
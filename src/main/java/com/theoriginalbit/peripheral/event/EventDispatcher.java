@@ -0,0 +1,374 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.event;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.theoriginalbit.peripheral.api.converter.IConversionRegistry;
+import com.theoriginalbit.peripheral.api.event.BackpressurePolicy;
+import com.theoriginalbit.peripheral.api.event.IEventDispatcher;
+import com.theoriginalbit.peripheral.api.util.TypeConversionException;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+import cpw.mods.fml.common.gameevent.TickEvent;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+import net.minecraftforge.event.world.WorldEvent;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the events queued for each computer and delivers them when the server tick ends. A computer's events are kept
+ * in one insertion ordered map, coalesced events under their name and source and other events under a key of their
+ * own, so a merged event keeps the position of the first event it replaced.
+ * <p/>
+ * ComputerCraft gives no way to see how full a computer's event queue is, so the number of events it has yet to handle
+ * is estimated: every delivered event adds one and the estimate drains by a fixed number every tick. Each tick a
+ * computer is only given events up to the capacity, the rest wait in its backlog.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class EventDispatcher implements IEventDispatcher {
+    public static final int DEFAULT_CAPACITY = 128;
+    public static final int DEFAULT_DRAIN_PER_TICK = 16;
+    public static final int DEFAULT_MAX_BACKLOG = 256;
+    public static final long DEFAULT_BLOCK_TIMEOUT = 50;
+
+    private final IConversionRegistry converter;
+    private final LinkedHashMap<IComputerAccess, ComputerQueue> queues = Maps.newLinkedHashMap();
+    private final ConcurrentMap<String, BackpressurePolicy> policies = Maps.newConcurrentMap();
+    private final EnumMap<BackpressurePolicy, AtomicLong> policyCounts = Maps.newEnumMap(BackpressurePolicy.class);
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong mergedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong detachedCount = new AtomicLong();
+    private volatile BackpressurePolicy defaultPolicy = BackpressurePolicy.DROP_OLDEST;
+    private volatile int capacity = DEFAULT_CAPACITY;
+    private volatile int drainPerTick = DEFAULT_DRAIN_PER_TICK;
+    private volatile int maxBacklog = DEFAULT_MAX_BACKLOG;
+    private volatile long blockTimeout = DEFAULT_BLOCK_TIMEOUT;
+    private volatile Thread tickThread;
+
+    public EventDispatcher(IConversionRegistry converter) {
+        this.converter = converter;
+        for (BackpressurePolicy policy : BackpressurePolicy.values()) {
+            policyCounts.put(policy, new AtomicLong());
+        }
+    }
+
+    @Override
+    public void queueEvent(IComputerAccess computer, String event, Object... args) throws TypeConversionException {
+        enqueue(computer, null, new PendingEvent(event, convert(args)));
+    }
+
+    @Override
+    public void queueConverted(IComputerAccess computer, String event, Object[] args) {
+        enqueue(computer, null, new PendingEvent(event, args));
+    }
+
+    @Override
+    public void queueCoalesced(IComputerAccess computer, String event, Object source, Object... args) throws TypeConversionException {
+        enqueue(computer, new CoalesceKey(event, source), new PendingEvent(event, convert(args)));
+    }
+
+    @Override
+    public void broadcastCoalesced(Iterable<IComputerAccess> computers, String event, Object source, Object... args) throws TypeConversionException {
+        final Object[] converted = convert(args);
+        final CoalesceKey key = new CoalesceKey(event, source);
+        for (IComputerAccess computer : computers) {
+            enqueue(computer, key, new PendingEvent(event, converted));
+        }
+    }
+
+    @Override
+    public void setPolicy(String event, BackpressurePolicy policy) {
+        policies.put(Preconditions.checkNotNull(event), Preconditions.checkNotNull(policy));
+    }
+
+    /**
+     * @param policy the policy of events without one of their own, {@link BackpressurePolicy#DROP_OLDEST} unless set.
+     *               Blocking as a default would hold up the computer thread every peripheral call is made from
+     */
+    public void setDefaultPolicy(BackpressurePolicy policy) {
+        defaultPolicy = Preconditions.checkNotNull(policy);
+    }
+
+    /**
+     * @param capacity     the most events a computer is estimated to hold before it stops being given more
+     * @param drainPerTick how many events a computer is assumed to handle each tick
+     * @param maxBacklog   the most events held back for a computer before the policies apply
+     * @param blockTimeout the milliseconds a producer waits for room under {@link BackpressurePolicy#BLOCK_PRODUCER}
+     */
+    public void setLimits(int capacity, int drainPerTick, int maxBacklog, long blockTimeout) {
+        Preconditions.checkArgument(capacity > 0 && drainPerTick > 0 && maxBacklog > 0 && blockTimeout >= 0);
+        this.capacity = capacity;
+        this.drainPerTick = drainPerTick;
+        this.maxBacklog = maxBacklog;
+        this.blockTimeout = blockTimeout;
+    }
+
+    @Override
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    @Override
+    public long getMergedCount() {
+        return mergedCount.get();
+    }
+
+    @Override
+    public long getPolicyCount(BackpressurePolicy policy) {
+        return policyCounts.get(policy).get();
+    }
+
+    /**
+     * @return how many events were shed by a policy without being delivered
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return how many events couldn't be delivered as the computer had detached
+     */
+    public long getDetachedCount() {
+        return detachedCount.get();
+    }
+
+    /**
+     * @return the number of events waiting to be delivered across every computer
+     */
+    public synchronized int getPendingCount() {
+        int count = 0;
+        for (ComputerQueue queue : queues.values()) {
+            count += queue.backlog.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return the estimated number of events the computer has yet to handle
+     */
+    public synchronized int getOutstandingCount(IComputerAccess computer) {
+        final ComputerQueue queue = queues.get(computer);
+        return queue == null ? 0 : queue.outstanding;
+    }
+
+    /**
+     * Delivers what each computer has room for, counts as one tick of draining
+     */
+    public void flush() {
+        synchronized (this) {
+            final Iterator<Map.Entry<IComputerAccess, ComputerQueue>> it = queues.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<IComputerAccess, ComputerQueue> entry = it.next();
+                final ComputerQueue queue = entry.getValue();
+                queue.outstanding = Math.max(0, queue.outstanding - drainPerTick);
+                if (!deliver(entry.getKey(), queue) || queue.backlog.isEmpty() && queue.outstanding == 0) {
+                    it.remove();
+                }
+            }
+            // producers waiting for room may now have it
+            notifyAll();
+        }
+    }
+
+    @SubscribeEvent
+    public void onServerTick(TickEvent.ServerTickEvent event) {
+        // the start of the tick comes before any peripheral of the tick can produce an event
+        tickThread = Thread.currentThread();
+        if (event.phase == TickEvent.Phase.END) {
+            flush();
+        }
+    }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        if (!event.world.isRemote && event.world.provider.dimensionId == 0) {
+            synchronized (this) {
+                queues.clear();
+                tickThread = null;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return false if the computer has detached
+     */
+    private boolean deliver(IComputerAccess computer, ComputerQueue queue) {
+        final Iterator<PendingEvent> it = queue.backlog.values().iterator();
+        while (it.hasNext() && queue.outstanding < capacity) {
+            final PendingEvent event = it.next();
+            try {
+                computer.queueEvent(event.name, event.args);
+            } catch (RuntimeException e) {
+                // ComputerCraft refuses events from peripherals that have detached, nothing else will get through
+                detachedCount.addAndGet(queue.backlog.size());
+                return false;
+            }
+            it.remove();
+            ++queue.outstanding;
+            deliveredCount.incrementAndGet();
+        }
+        return true;
+    }
+
+    private synchronized void enqueue(IComputerAccess computer, CoalesceKey key, PendingEvent event) {
+        ComputerQueue queue = queueFor(computer);
+
+        if (key != null) {
+            final PendingEvent existing = queue.backlog.get(key);
+            if (existing != null) {
+                // replacing the value keeps the entry's position in the map
+                existing.args = event.args;
+                mergedCount.incrementAndGet();
+                return;
+            }
+        }
+
+        if (queue.backlog.size() >= maxBacklog) {
+            if (!applyPolicy(queue, event)) {
+                return;
+            }
+            // a blocked producer released the lock, the flush may have dropped the queue meanwhile
+            queue = queueFor(computer);
+        }
+        queue.backlog.put(key != null ? key : new Object(), event);
+    }
+
+    private ComputerQueue queueFor(IComputerAccess computer) {
+        ComputerQueue queue = queues.get(computer);
+        if (queue == null) {
+            queue = new ComputerQueue();
+            queues.put(computer, queue);
+        }
+        return queue;
+    }
+
+    /**
+     * @return true if the event should still be added to the backlog
+     */
+    private boolean applyPolicy(ComputerQueue queue, PendingEvent event) {
+        final BackpressurePolicy configured = policies.get(event.name);
+        final BackpressurePolicy policy = configured != null ? configured : defaultPolicy;
+        policyCounts.get(policy).incrementAndGet();
+        switch (policy) {
+            case DROP_OLDEST:
+                for (Iterator<PendingEvent> it = queue.backlog.values().iterator(); it.hasNext(); ) {
+                    if (it.next().name.equals(event.name)) {
+                        it.remove();
+                        droppedCount.incrementAndGet();
+                        return true;
+                    }
+                }
+                break;
+            case MERGE:
+                PendingEvent newest = null;
+                for (PendingEvent pending : queue.backlog.values()) {
+                    if (pending.name.equals(event.name)) {
+                        newest = pending;
+                    }
+                }
+                if (newest != null) {
+                    newest.args = event.args;
+                    mergedCount.incrementAndGet();
+                    return false;
+                }
+                break;
+            case BLOCK_PRODUCER:
+                // waiting on the server thread would hold up the flush that makes the room, before the first tick the
+                // server thread isn't known yet and nothing would flush either
+                final Thread thread = tickThread;
+                if (thread != null && Thread.currentThread() != thread) {
+                    awaitRoom(queue);
+                }
+                return true;
+            case DROP_NEWEST:
+                break;
+        }
+        droppedCount.incrementAndGet();
+        return false;
+    }
+
+    private void awaitRoom(ComputerQueue queue) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+        try {
+            long remaining;
+            while (queue.backlog.size() >= maxBacklog && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Object[] convert(Object[] args) throws TypeConversionException {
+        final Object[] converted = new Object[args.length];
+        for (int i = 0; i < args.length; ++i) {
+            converted[i] = converter.toLua(args[i]);
+        }
+        return converted;
+    }
+
+    private static final class ComputerQueue {
+        private final LinkedHashMap<Object, PendingEvent> backlog = Maps.newLinkedHashMap();
+        private int outstanding;
+    }
+
+    private static final class PendingEvent {
+        private final String name;
+        private Object[] args;
+
+        private PendingEvent(String name, Object[] args) {
+            this.name = name;
+            this.args = args;
+        }
+    }
+
+    private static final class CoalesceKey {
+        private final String event;
+        private final Object source;
+
+        private CoalesceKey(String event, Object source) {
+            this.event = event;
+            this.source = source;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CoalesceKey)) {
+                return false;
+            }
+            final CoalesceKey other = (CoalesceKey) o;
+            return event.equals(other.event) && Objects.equal(source, other.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(event, source);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.theoriginalbit.peripheral.api.filesystem.IWritableMount;
+import com.theoriginalbit.peripheral.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A base for writable mounts that answers {@link #getRemainingSpace()} in constant time. Subclasses report every change
+ * in the bytes they store through {@link #adjustUsedSpace(long)} instead of the whole tree being walked on each query.
+ * <p/>
+ * The running total is written to a sidecar file when the mount is closed and read back, then deleted, the next time
+ * the mount is used. When the sidecar is missing, because the mount is new or the server didn't stop cleanly, the
+ * total is rebuilt by {@link #scanUsedSpace()} on a background thread; until that finishes the remaining space only
+ * reflects the changes made since the mount was first used. Changes reported while the scan runs are added to its
+ * result rather than lost.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public abstract class AccountedWritableMount implements IWritableMount, Closeable {
+    private static final ExecutorService SCANNER = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("peripheral-framework-space-scanner").setDaemon(true).build());
+
+    private final long capacity;
+    private final File sidecar;
+    private final AtomicLong used = new AtomicLong();
+    // changes reported since the scan's snapshot, guarded by used
+    private boolean scanning;
+    private long scanDelta;
+    private boolean loaded;
+
+    /**
+     * @param capacity the number of bytes the mount may store
+     * @param sidecar  the file to persist the running total in, it should be outside of the mounted tree
+     */
+    protected AccountedWritableMount(long capacity, File sidecar) {
+        this.capacity = capacity;
+        this.sidecar = sidecar;
+    }
+
+    @Override
+    public long getRemainingSpace() throws IOException {
+        return Math.max(0, capacity - getUsedSpace());
+    }
+
+    /**
+     * @return the number of bytes currently stored
+     */
+    public long getUsedSpace() {
+        ensureLoaded();
+        return used.get();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Writes the running total to the sidecar file
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (!loaded) {
+                return;
+            }
+        }
+        Files.write(Long.toString(used.get()), sidecar, Charsets.UTF_8);
+    }
+
+    /**
+     * Records a change in the number of bytes stored, positive when data was written and negative when it was removed
+     *
+     * @param delta the change in bytes
+     */
+    protected final void adjustUsedSpace(long delta) {
+        ensureLoaded();
+        synchronized (used) {
+            used.addAndGet(delta);
+            if (scanning) {
+                scanDelta += delta;
+            }
+        }
+    }
+
+    /**
+     * Called by {@link #scanUsedSpace()} at the moment its view of the mount is taken, while no change can be reported.
+     * Changes reported after it are added to the scan's result. Without it every change reported since the scan
+     * started is added, which counts twice any change the walk also saw.
+     */
+    protected final void markScanSnapshot() {
+        synchronized (used) {
+            scanDelta = 0;
+        }
+    }
+
+    /**
+     * Works out the number of bytes stored by walking the mount, only called when the sidecar file is missing. The
+     * result replaces the running total, plus any changes reported after {@link #markScanSnapshot()}.
+     *
+     * @return the bytes stored
+     * @throws IOException if the mount couldn't be walked
+     */
+    protected abstract long scanUsedSpace() throws IOException;
+
+    private synchronized void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (sidecar.isFile()) {
+            try {
+                used.addAndGet(Long.parseLong(Files.toString(sidecar, Charsets.UTF_8).trim()));
+                // the total is only trusted until the next clean close writes it again
+                if (!sidecar.delete()) {
+                    Log.warn("Unable to delete %s, a crash may leave it out of date", sidecar);
+                }
+                return;
+            } catch (Exception e) {
+                Log.warn("Unable to read %s, the used space will be rebuilt: %s", sidecar, e.getMessage());
+                used.set(0);
+            }
+        }
+
+        synchronized (used) {
+            scanning = true;
+            scanDelta = 0;
+        }
+        SCANNER.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final long scanned = scanUsedSpace();
+                    synchronized (used) {
+                        used.set(scanned + scanDelta);
+                    }
+                } catch (IOException e) {
+                    Log.error("Unable to work out the used space of %s: %s", sidecar, e.getMessage());
+                } finally {
+                    synchronized (used) {
+                        scanning = false;
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.theoriginalbit.peripheral.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores file contents once by their SHA-1 hash, shared by the {@link DedupMount}s of every computer. Each blob is
+ * reference counted by the manifest entries pointing at it and deleted when the last one goes.
+ * <p/>
+ * The directory holds the blobs in {@code blobs/}, the manifests of the mounts in {@code manifests/} and, while the
+ * store is closed, the reference counts in {@code refs}. Like the used space of an {@link AccountedWritableMount} the
+ * counts are deleted once read, if they are missing the store rebuilds them from the manifests and removes any blob
+ * nothing points at.
+ * <p/>
+ * Stores are shared per directory, get one with {@link #open(File)} and give it back with {@link #close()}.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class BlobStore implements Closeable {
+    private static final HashMap<File, BlobStore> OPEN = Maps.newHashMap();
+    private static final Splitter FIELDS = Splitter.on(' ');
+
+    private final File directory;
+    private final File blobs;
+    private final File manifests;
+    private final File refs;
+    private final Multiset<String> references = HashMultiset.create();
+    private final AtomicLong storedCount = new AtomicLong();
+    private final AtomicLong dedupedCount = new AtomicLong();
+    private int users;
+
+    private BlobStore(File directory) throws IOException {
+        this.directory = directory;
+        blobs = new File(directory, "blobs");
+        manifests = new File(directory, "manifests");
+        refs = new File(directory, "refs");
+        if (!blobs.isDirectory() && !blobs.mkdirs() || !manifests.isDirectory() && !manifests.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        load();
+    }
+
+    /**
+     * Gets the store for the directory, opening it if nothing else is using it
+     *
+     * @param directory the directory of the store
+     * @return the store, which must be closed once it is no longer used
+     * @throws IOException if the store couldn't be opened
+     */
+    public static BlobStore open(File directory) throws IOException {
+        final File key = directory.getCanonicalFile();
+        synchronized (OPEN) {
+            BlobStore store = OPEN.get(key);
+            if (store == null) {
+                store = new BlobStore(key);
+                OPEN.put(key, store);
+            }
+            ++store.users;
+            return store;
+        }
+    }
+
+    /**
+     * Gives the store back, saving the reference counts once nothing else uses it. The counts are saved before the
+     * store stops being shared, so a store opened for the directory afterwards reads this one's final counts
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (OPEN) {
+            if (--users > 0) {
+                return;
+            }
+            try {
+                saveReferences();
+            } finally {
+                OPEN.remove(directory);
+            }
+        }
+    }
+
+    /**
+     * Stores the contents, or only adds a reference if identical contents are already stored
+     *
+     * @param data the file contents
+     * @return the hash to read the contents back with
+     */
+    public synchronized String put(byte[] data) throws IOException {
+        final String hash = Hashing.sha1().hashBytes(data).toString();
+        if (references.add(hash, 1) > 0) {
+            dedupedCount.incrementAndGet();
+            return hash;
+        }
+        final File file = blobFile(hash);
+        // a blob nothing referenced may still be around if deleting it failed
+        if (!file.isFile()) {
+            final File temp = new File(file.getPath() + ".tmp");
+            try {
+                Files.createParentDirs(temp);
+                Files.write(data, temp);
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Unable to store " + hash);
+                }
+            } catch (IOException e) {
+                references.remove(hash);
+                throw e;
+            }
+        }
+        storedCount.incrementAndGet();
+        return hash;
+    }
+
+    /**
+     * Drops a reference to the contents, deleting them if it was the last one
+     */
+    public synchronized void release(String hash) {
+        if (references.remove(hash, 1) != 1) {
+            return;
+        }
+        final File file = blobFile(hash);
+        if (!file.delete()) {
+            Log.warn("Unable to delete unreferenced blob %s", file);
+        }
+    }
+
+    public InputStream openForRead(String hash) throws IOException {
+        return new FileInputStream(blobFile(hash));
+    }
+
+    /**
+     * @param name the name of a computer's manifest
+     * @return the file to store the manifest in
+     */
+    public File getManifestFile(String name) {
+        return new File(manifests, name);
+    }
+
+    /**
+     * @return the number of distinct contents stored
+     */
+    public synchronized int getBlobCount() {
+        return references.elementSet().size();
+    }
+
+    /**
+     * @return how many writes stored new contents
+     */
+    public long getStoredCount() {
+        return storedCount.get();
+    }
+
+    /**
+     * @return how many writes matched contents that were already stored
+     */
+    public long getDedupedCount() {
+        return dedupedCount.get();
+    }
+
+    private File blobFile(String hash) {
+        return new File(new File(blobs, hash.substring(0, 2)), hash);
+    }
+
+    private synchronized void saveReferences() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (Multiset.Entry<String> entry : references.entrySet()) {
+            builder.append(entry.getElement()).append(' ').append(entry.getCount()).append('\n');
+        }
+        final File temp = new File(refs.getPath() + ".tmp");
+        Files.write(builder, temp, Charsets.UTF_8);
+        // a crash part way through leaves only the temp file, the counts are then rebuilt rather than cut short.
+        // Where the rename can't replace the file it is deleted first, a crash in between also means a rebuild
+        if (!temp.renameTo(refs) && !(refs.delete() && temp.renameTo(refs))) {
+            throw new IOException("Unable to replace " + refs);
+        }
+    }
+
+    private void load() throws IOException {
+        if (refs.isFile()) {
+            try {
+                for (String line : Files.readLines(refs, Charsets.UTF_8)) {
+                    if (!line.isEmpty()) {
+                        final List<String> fields = Lists.newArrayList(FIELDS.split(line));
+                        references.add(fields.get(0), Integer.parseInt(fields.get(1)));
+                    }
+                }
+                // the counts are only trusted until the next clean close writes them again
+                if (!refs.delete()) {
+                    Log.warn("Unable to delete %s, a crash may leave it out of date", refs);
+                }
+                return;
+            } catch (Exception e) {
+                Log.warn("Unable to read %s, the references will be rebuilt: %s", refs, e.getMessage());
+                references.clear();
+            }
+        }
+        rebuild();
+    }
+
+    private void rebuild() throws IOException {
+        final File[] files = manifests.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".tmp")) {
+                    continue;
+                }
+                for (Manifest.Entry entry : Manifest.load(file).entries.values()) {
+                    if (!entry.isDirectory()) {
+                        references.add(entry.hash);
+                    }
+                }
+            }
+        }
+
+        // anything not referenced was left behind by a crash between storing a blob and saving its manifest
+        int removed = 0;
+        final File[] buckets = blobs.listFiles();
+        if (buckets != null) {
+            for (File bucket : buckets) {
+                final File[] contents = bucket.listFiles();
+                if (contents == null) {
+                    continue;
+                }
+                for (File blob : contents) {
+                    if (!references.contains(blob.getName()) && blob.delete()) {
+                        ++removed;
+                    }
+                }
+            }
+        }
+        for (String hash : references.elementSet()) {
+            if (!blobFile(hash).isFile()) {
+                Log.warn("Blob %s is missing from %s", hash, directory);
+            }
+        }
+        Log.info("Rebuilt the references of %s, %d blobs, %d unreferenced removed", directory,
+                references.elementSet().size(), removed);
+    }
+}
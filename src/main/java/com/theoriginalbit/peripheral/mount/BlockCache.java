@@ -0,0 +1,310 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.theoriginalbit.peripheral.util.PathUtil;
+import dan200.computercraft.api.filesystem.IMount;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded cache of fixed size blocks of mounted files, shared by every mount read through it so computers
+ * reading the same files of the same mount share the I/O. Blocks are keyed by the mount instance, path, generation and
+ * block index; a write or delete made through {@link CachedWritableMount} moves the path to a new generation so blocks
+ * of the old contents are never read again and are left to be evicted.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class BlockCache {
+    public static final int BLOCK_SIZE = 8 * 1024;
+    public static final long DEFAULT_SIZE = 16 * 1024 * 1024;
+
+    private final Cache<BlockKey, byte[]> cache;
+    private final ConcurrentMap<IMount, Source> sources = new MapMaker().weakKeys().makeMap();
+    private final AtomicLong sourceIds = new AtomicLong();
+
+    /**
+     * @param maxSize the number of bytes of blocks to keep
+     */
+    public BlockCache(long maxSize) {
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxSize)
+                .weigher(new Weigher<BlockKey, byte[]>() {
+                    @Override
+                    public int weigh(BlockKey key, byte[] value) {
+                        return value.length;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Opens a file of the mount, reading it through the cache
+     *
+     * @param mount the mount to read from
+     * @param path  the file to read
+     * @return the contents of the file
+     * @throws IOException if the file couldn't be read
+     */
+    public InputStream openForRead(IMount mount, String path) throws IOException {
+        return openForRead(mount, mount, path);
+    }
+
+    /**
+     * Opens a file of the mount, reading it through the cache and the blocks it doesn't hold through the reader
+     *
+     * @param mount  the mount the blocks are cached for
+     * @param reader the mount to read missing blocks from, the same files as the mount
+     * @param path   the file to read
+     * @return the contents of the file
+     * @throws IOException if the file couldn't be read
+     */
+    public InputStream openForRead(IMount mount, IMount reader, String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        final long size = reader.getSize(key);
+        return new BlockInputStream(reader, key, source(mount).fileKey(key), size);
+    }
+
+    /**
+     * Moves the path of the mount to a new generation, call it whenever the file is changed
+     */
+    public void invalidate(IMount mount, String path) {
+        source(mount).invalidate(PathUtil.normalize(path));
+    }
+
+    /**
+     * Moves every path of the mount to a new generation, for deletions that may cover many files
+     */
+    public void invalidateAll(IMount mount) {
+        source(mount).epoch.incrementAndGet();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return the number of blocks currently held
+     */
+    public long getBlockCount() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private Source source(IMount mount) {
+        Source source = sources.get(mount);
+        if (source == null) {
+            final Source created = new Source(sourceIds.incrementAndGet());
+            source = sources.putIfAbsent(mount, created);
+            if (source == null) {
+                source = created;
+            }
+        }
+        return source;
+    }
+
+    private static final class Source {
+        private final long id;
+        private final AtomicLong epoch = new AtomicLong();
+        private final ConcurrentMap<String, Long> generations = Maps.newConcurrentMap();
+        private final AtomicLong nextGeneration = new AtomicLong();
+
+        private Source(long id) {
+            this.id = id;
+        }
+
+        private BlockKey fileKey(String path) {
+            final Long generation = generations.get(path);
+            return new BlockKey(id, path, epoch.get(), generation == null ? 0 : generation, 0);
+        }
+
+        private void invalidate(String path) {
+            generations.put(path, nextGeneration.incrementAndGet());
+        }
+    }
+
+    private static final class BlockKey {
+        private final long source;
+        private final String path;
+        private final long epoch;
+        private final long generation;
+        private final long block;
+
+        private BlockKey(long source, String path, long epoch, long generation, long block) {
+            this.source = source;
+            this.path = path;
+            this.epoch = epoch;
+            this.generation = generation;
+            this.block = block;
+        }
+
+        private BlockKey block(long index) {
+            return new BlockKey(source, path, epoch, generation, index);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BlockKey)) {
+                return false;
+            }
+            final BlockKey other = (BlockKey) o;
+            return source == other.source && epoch == other.epoch && generation == other.generation
+                    && block == other.block && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(source, path, epoch, generation, block);
+        }
+    }
+
+    /**
+     * Reads blocks from the cache, on a miss the block is read from a stream over the file that is kept open and
+     * reused while reading forward, so a cold sequential read only opens the file once.
+     */
+    private final class BlockInputStream extends InputStream {
+        private final IMount mount;
+        private final String path;
+        private final BlockKey file;
+        private long size;
+        private long position;
+        private byte[] block;
+        private long blockIndex = -1;
+        private InputStream direct;
+        private long directPosition;
+
+        private BlockInputStream(IMount mount, String path, BlockKey file, long size) {
+            this.mount = mount;
+            this.path = path;
+            this.file = file;
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return block[(int) (position++ % BLOCK_SIZE)] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int read = 0;
+            while (read < len && fill()) {
+                final int offset = (int) (position % BLOCK_SIZE);
+                final int count = Math.min(len - read, block.length - offset);
+                System.arraycopy(block, offset, b, off + read, count);
+                position += count;
+                read += count;
+            }
+            return read == 0 ? -1 : read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = Math.max(0, Math.min(n, size - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, size - position));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (direct != null) {
+                direct.close();
+                direct = null;
+            }
+        }
+
+        /**
+         * @return false at the end of the file, otherwise the block holding the position is loaded
+         */
+        private boolean fill() throws IOException {
+            if (position >= size) {
+                return false;
+            }
+            final long index = position / BLOCK_SIZE;
+            if (index != blockIndex) {
+                try {
+                    block = cache.get(file.block(index), new Callable<byte[]>() {
+                        @Override
+                        public byte[] call() throws Exception {
+                            return load(index);
+                        }
+                    });
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+                blockIndex = index;
+                // a short block before the expected end means the file was shorter than when it was opened
+                if (block.length < BLOCK_SIZE) {
+                    size = Math.min(size, index * BLOCK_SIZE + block.length);
+                }
+            }
+            return position < size;
+        }
+
+        private byte[] load(long index) throws IOException {
+            final long start = index * BLOCK_SIZE;
+            if (direct == null || directPosition > start) {
+                close();
+                direct = mount.openForRead(path);
+                directPosition = 0;
+            }
+            ByteStreams.skipFully(direct, start - directPosition);
+            final byte[] data = new byte[(int) Math.min(BLOCK_SIZE, size - start)];
+            final int read = ByteStreams.read(direct, data, 0, data.length);
+            directPosition = start + read;
+            if (read < data.length) {
+                final byte[] truncated = new byte[read];
+                System.arraycopy(data, 0, truncated, 0, read);
+                return truncated;
+            }
+            return data;
+        }
+    }
+}
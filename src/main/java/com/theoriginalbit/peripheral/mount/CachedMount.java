@@ -0,0 +1,102 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.theoriginalbit.peripheral.api.filesystem.IMount;
+import com.theoriginalbit.peripheral.api.filesystem.IWritableMount;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Reads the files of a mount through a {@link BlockCache}, everything else goes straight to the mount. Wrappers of the
+ * same mount instance share their cached blocks.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public class CachedMount implements IMount {
+    protected final IMount mount;
+    protected final BlockCache cache;
+    /**
+     * Where the calls go, the mount itself unless they are counted on the way, see {@link #through}
+     */
+    protected final dan200.computercraft.api.filesystem.IMount target;
+
+    protected CachedMount(IMount mount, BlockCache cache) {
+        this(mount, mount, cache);
+    }
+
+    CachedMount(IMount mount, dan200.computercraft.api.filesystem.IMount target, BlockCache cache) {
+        this.mount = mount;
+        this.target = target;
+        this.cache = cache;
+    }
+
+    /**
+     * @param mount the mount to cache the reads of
+     * @param cache the cache to read through
+     * @return the wrapped mount, writable if the mount is
+     */
+    public static CachedMount wrap(IMount mount, BlockCache cache) {
+        if (mount instanceof IWritableMount) {
+            return new CachedWritableMount((IWritableMount) mount, cache);
+        }
+        return new CachedMount(mount, cache);
+    }
+
+    public IMount getMount() {
+        return mount;
+    }
+
+    /**
+     * @param target a wrapper of the mount to send the calls through, blocks stay cached for the mount
+     * @return a cached mount of the same mount that calls the target, so only what misses the cache reaches it
+     */
+    CachedMount through(dan200.computercraft.api.filesystem.IMount target) {
+        return new CachedMount(mount, target, cache);
+    }
+
+    @Override
+    public String getMountLocation() {
+        return mount.getMountLocation();
+    }
+
+    @Override
+    public boolean exists(String path) throws IOException {
+        return target.exists(path);
+    }
+
+    @Override
+    public boolean isDirectory(String path) throws IOException {
+        return target.isDirectory(path);
+    }
+
+    @Override
+    public void list(String path, List<String> contents) throws IOException {
+        target.list(path, contents);
+    }
+
+    @Override
+    public long getSize(String path) throws IOException {
+        return target.getSize(path);
+    }
+
+    @Override
+    public InputStream openForRead(String path) throws IOException {
+        return cache.openForRead(mount, target, path);
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.theoriginalbit.peripheral.api.filesystem.IWritableMount;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A {@link CachedMount} over a writable mount, changes made through it invalidate the cached blocks. Changes made to
+ * the mount by other means are not seen until the blocks are evicted.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public class CachedWritableMount extends CachedMount implements IWritableMount {
+    private final dan200.computercraft.api.filesystem.IWritableMount writable;
+
+    protected CachedWritableMount(IWritableMount mount, BlockCache cache) {
+        this(mount, mount, cache);
+    }
+
+    CachedWritableMount(IWritableMount mount, dan200.computercraft.api.filesystem.IWritableMount target,
+                        BlockCache cache) {
+        super(mount, target, cache);
+        writable = target;
+    }
+
+    @Override
+    CachedMount through(dan200.computercraft.api.filesystem.IMount target) {
+        return new CachedWritableMount((IWritableMount) mount,
+                (dan200.computercraft.api.filesystem.IWritableMount) target, cache);
+    }
+
+    @Override
+    public void makeDirectory(String path) throws IOException {
+        writable.makeDirectory(path);
+    }
+
+    @Override
+    public void delete(String path) throws IOException {
+        try {
+            writable.delete(path);
+        } finally {
+            // a directory may hold any number of cached files
+            cache.invalidateAll(mount);
+        }
+    }
+
+    @Override
+    public OutputStream openForWrite(String path) throws IOException {
+        return invalidating(path, writable.openForWrite(path));
+    }
+
+    @Override
+    public OutputStream openForAppend(String path) throws IOException {
+        return invalidating(path, writable.openForAppend(path));
+    }
+
+    @Override
+    public long getRemainingSpace() throws IOException {
+        return writable.getRemainingSpace();
+    }
+
+    private OutputStream invalidating(final String path, OutputStream out) {
+        // written data may be visible as soon as it's written, or only once closed, invalidate on both
+        cache.invalidate(mount, path);
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    cache.invalidate(mount, path);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Hands out fixed size heap chunks to {@link MemoryMount}s and keeps a number of freed chunks for reuse. The bytes
+ * handed out across every mount are capped, so the memory used by RAM mounts stays bounded however many computers use
+ * them.
+ * <p/>
+ * Chunks are not cleared when reused, a mount must never read past what it wrote into a chunk.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class ChunkPool {
+    public static final int CHUNK_SIZE = 4096;
+    public static final long DEFAULT_LIMIT = 64 * 1024 * 1024;
+    public static final int DEFAULT_RETAINED = 256;
+
+    private final long limit;
+    private final int retained;
+    private final ArrayList<byte[]> free = Lists.newArrayList();
+    private long outstanding;
+    private long allocationCount;
+    private long reuseCount;
+
+    /**
+     * @param limit    the most bytes that may be handed out at once
+     * @param retained the most freed chunks to keep for reuse
+     */
+    public ChunkPool(long limit, int retained) {
+        this.limit = limit;
+        this.retained = retained;
+    }
+
+    /**
+     * @return a chunk of {@link #CHUNK_SIZE} bytes with undefined contents
+     * @throws IOException if the limit has been reached
+     */
+    public synchronized byte[] allocate() throws IOException {
+        if ((outstanding + 1) * CHUNK_SIZE > limit) {
+            throw new IOException("Out of memory");
+        }
+        ++outstanding;
+        ++allocationCount;
+        if (!free.isEmpty()) {
+            ++reuseCount;
+            return free.remove(free.size() - 1);
+        }
+        return new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * Gives a chunk back to be reused, nothing may read it afterwards
+     */
+    public synchronized void free(byte[] chunk) {
+        --outstanding;
+        if (free.size() < retained) {
+            free.add(chunk);
+        }
+    }
+
+    /**
+     * Gives a chunk back without reusing it, for chunks that may still be read and are left to the garbage collector
+     */
+    public synchronized void discard(byte[] chunk) {
+        --outstanding;
+    }
+
+    /**
+     * @return the bytes currently handed out
+     */
+    public synchronized long getAllocatedBytes() {
+        return outstanding * CHUNK_SIZE;
+    }
+
+    /**
+     * @return the number of freed chunks kept for reuse
+     */
+    public synchronized int getPooledCount() {
+        return free.size();
+    }
+
+    public synchronized long getAllocationCount() {
+        return allocationCount;
+    }
+
+    /**
+     * @return how many allocations were served by a reused chunk
+     */
+    public synchronized long getReuseCount() {
+        return reuseCount;
+    }
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.theoriginalbit.peripheral.util.PathUtil;
+import dan200.computercraft.api.filesystem.IWritableMount;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * A computer's writable mount whose file contents live in a shared {@link BlobStore}, the mount itself only keeps a
+ * {@link Manifest} of paths to content hashes. Writing contents that any computer already stored only costs a manifest
+ * update. Files are buffered in memory while open and stored when the stream is closed.
+ * <p/>
+ * The space used is the logical size of the computer's files, so deduplication doesn't change how much a computer may
+ * store.
+ * <p/>
+ * Blobs are immutable, so appending reads the whole file back, hashes it with the new data and stores the result as a
+ * new blob. A program that appends to a growing file, such as a log, costs I/O in the square of the file's size, so
+ * mounts for append heavy files are better served by a {@link WriteBehindMount} or a plain writable mount.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public class DedupMount implements IWritableMount {
+    private final BlobStore store;
+    private final File manifestFile;
+    private final Manifest manifest;
+    private final long capacity;
+    private long used;
+
+    /**
+     * @param store    the store holding the file contents
+     * @param name     the name of the computer's manifest within the store
+     * @param capacity the number of bytes the computer may store
+     * @throws IOException if the manifest couldn't be read
+     */
+    public DedupMount(BlobStore store, String name, long capacity) throws IOException {
+        this.store = store;
+        this.capacity = capacity;
+        manifestFile = store.getManifestFile(name);
+        manifest = Manifest.load(manifestFile);
+        for (Manifest.Entry entry : manifest.entries.values()) {
+            used += entry.size;
+        }
+    }
+
+    @Override
+    public synchronized boolean exists(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        return key.isEmpty() || manifest.entries.containsKey(key);
+    }
+
+    @Override
+    public synchronized boolean isDirectory(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        if (key.isEmpty()) {
+            return true;
+        }
+        final Manifest.Entry entry = manifest.entries.get(key);
+        return entry != null && entry.isDirectory();
+    }
+
+    @Override
+    public synchronized void list(String path, List<String> contents) throws IOException {
+        final String key = PathUtil.normalize(path);
+        if (!isDirectory(key)) {
+            throw new IOException("Not a directory");
+        }
+        final String prefix = key.isEmpty() ? "" : key + '/';
+        for (String child : subtree(prefix).keySet()) {
+            final String name = child.substring(prefix.length());
+            if (name.indexOf('/') < 0) {
+                contents.add(name);
+            }
+        }
+    }
+
+    @Override
+    public synchronized long getSize(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        if (key.isEmpty()) {
+            return 0;
+        }
+        final Manifest.Entry entry = manifest.entries.get(key);
+        if (entry == null) {
+            throw new IOException("No such file");
+        }
+        return entry.size;
+    }
+
+    @Override
+    public synchronized InputStream openForRead(String path) throws IOException {
+        final Manifest.Entry entry = manifest.entries.get(PathUtil.normalize(path));
+        if (entry == null || entry.isDirectory()) {
+            throw new IOException("No such file");
+        }
+        return store.openForRead(entry.hash);
+    }
+
+    @Override
+    public synchronized void makeDirectory(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        if (key.isEmpty() || isDirectory(key)) {
+            return;
+        }
+        if (manifest.entries.containsKey(key)) {
+            throw new IOException("File exists");
+        }
+        addParents(key);
+        manifest.entries.put(key, Manifest.Entry.DIRECTORY);
+        manifest.save(manifestFile);
+    }
+
+    @Override
+    public synchronized void delete(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        final Map<String, Manifest.Entry> removed = Maps.newHashMap();
+        final Manifest.Entry entry = manifest.entries.remove(key);
+        if (entry != null) {
+            removed.put(key, entry);
+        }
+        if (key.isEmpty() || entry != null && entry.isDirectory()) {
+            final SortedMap<String, Manifest.Entry> children = subtree(key.isEmpty() ? "" : key + '/');
+            removed.putAll(children);
+            children.clear();
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+
+        try {
+            manifest.save(manifestFile);
+        } catch (IOException e) {
+            // the manifest on disk still has the files
+            manifest.entries.putAll(removed);
+            throw e;
+        }
+        // only once the manifest on disk no longer refers to the blobs can they be released
+        for (Manifest.Entry child : removed.values()) {
+            if (!child.isDirectory()) {
+                release(child);
+            }
+        }
+    }
+
+    @Override
+    public OutputStream openForWrite(String path) throws IOException {
+        return open(PathUtil.normalize(path), false);
+    }
+
+    @Override
+    public OutputStream openForAppend(String path) throws IOException {
+        return open(PathUtil.normalize(path), true);
+    }
+
+    @Override
+    public synchronized long getRemainingSpace() throws IOException {
+        return Math.max(0, capacity - used);
+    }
+
+    /**
+     * @return the number of bytes of the computer's files
+     */
+    public synchronized long getUsedSpace() {
+        return used;
+    }
+
+    private synchronized OutputStream open(String key, boolean append) throws IOException {
+        if (isDirectory(key)) {
+            throw new IOException("Cannot write to directory");
+        }
+        // fail now rather than when the stream is closed
+        checkParents(key);
+        return new BufferedWrite(key, append);
+    }
+
+    private synchronized void commit(String key, boolean append, ByteArrayOutputStream written) throws IOException {
+        checkParents(key);
+        final Manifest.Entry existing = manifest.entries.get(key);
+        if (existing != null && existing.isDirectory()) {
+            throw new IOException("Cannot write to directory");
+        }
+
+        final byte[] data;
+        if (append && existing != null) {
+            final ByteArrayOutputStream combined = new ByteArrayOutputStream((int) existing.size + written.size());
+            final InputStream in = store.openForRead(existing.hash);
+            try {
+                ByteStreams.copy(in, combined);
+            } finally {
+                in.close();
+            }
+            written.writeTo(combined);
+            data = combined.toByteArray();
+        } else {
+            data = written.toByteArray();
+        }
+
+        final long growth = data.length - (existing == null ? 0 : existing.size);
+        if (growth > capacity - used) {
+            throw new IOException("Out of space");
+        }
+
+        // store the new contents first, rewriting identical contents only adds a reference to the same blob
+        final String hash = store.put(data);
+        addParents(key);
+        manifest.entries.put(key, new Manifest.Entry(hash, data.length));
+        try {
+            manifest.save(manifestFile);
+        } catch (IOException e) {
+            // the manifest on disk still has the old contents, keep them and drop the new
+            if (existing != null) {
+                manifest.entries.put(key, existing);
+            } else {
+                manifest.entries.remove(key);
+            }
+            store.release(hash);
+            throw e;
+        }
+        used += growth;
+        // the old contents can only be released once the manifest on disk no longer refers to them
+        if (existing != null) {
+            store.release(existing.hash);
+        }
+    }
+
+    private void release(Manifest.Entry entry) {
+        used -= entry.size;
+        store.release(entry.hash);
+    }
+
+    private SortedMap<String, Manifest.Entry> subtree(String prefix) {
+        return prefix.isEmpty() ? manifest.entries : manifest.entries.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    private void checkParents(String key) throws IOException {
+        for (String parent = PathUtil.parent(key); !parent.isEmpty(); parent = PathUtil.parent(parent)) {
+            final Manifest.Entry entry = manifest.entries.get(parent);
+            if (entry != null && !entry.isDirectory()) {
+                throw new IOException("Access denied");
+            }
+        }
+    }
+
+    private void addParents(String key) {
+        for (String parent = PathUtil.parent(key); !parent.isEmpty(); parent = PathUtil.parent(parent)) {
+            if (manifest.entries.containsKey(parent)) {
+                return;
+            }
+            manifest.entries.put(parent, Manifest.Entry.DIRECTORY);
+        }
+    }
+
+    private final class BufferedWrite extends ByteArrayOutputStream {
+        private final String key;
+        private final boolean append;
+        private boolean closed;
+
+        private BufferedWrite(String key, boolean append) {
+            this.key = key;
+            this.append = append;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            commit(key, append, this);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.base.Preconditions;
+import com.theoriginalbit.peripheral.api.filesystem.IMountFactory;
+import dan200.computercraft.api.filesystem.IMount;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+import net.minecraftforge.common.DimensionManager;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Gives every computer a {@link DedupMount}, all backed by one {@link BlobStore} in
+ * {@code peripheral-framework/<name>} of the world save. The name should be unique to the factory as the computers'
+ * manifests are named by computer id.
+ * <p/>
+ * Extend this class with a public no-arg constructor to use it with the Mount annotation.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public abstract class DedupMountFactory implements IMountFactory, Closeable {
+    private final String location;
+    private final String name;
+    private final long capacity;
+    private BlobStore store;
+
+    /**
+     * @param mountLocation the location on the computer to mount to
+     * @param name          the directory name within the world save to store the contents in
+     * @param capacity      the number of bytes each computer may store
+     */
+    protected DedupMountFactory(String mountLocation, String name, long capacity) {
+        location = Preconditions.checkNotNull(mountLocation);
+        this.name = Preconditions.checkNotNull(name);
+        this.capacity = capacity;
+    }
+
+    @Override
+    public String getMountLocation() {
+        return location;
+    }
+
+    @Override
+    public IMount createMount(IComputerAccess computer) throws IOException {
+        return new DedupMount(getStore(), Integer.toString(computer.getID()), capacity);
+    }
+
+    @Override
+    public void releaseMount(IComputerAccess computer, IMount mount) {
+        // every change is already in the manifest and the store
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (store != null) {
+            store.close();
+            store = null;
+        }
+    }
+
+    /**
+     * @return the store shared by the computers' mounts, opened on first use as the world save isn't known before
+     * @throws IOException if the store couldn't be opened
+     */
+    public synchronized BlobStore getStore() throws IOException {
+        if (store == null) {
+            store = BlobStore.open(getStoreDirectory());
+        }
+        return store;
+    }
+
+    /**
+     * @return the directory of the store
+     */
+    protected File getStoreDirectory() {
+        return new File(new File(DimensionManager.getCurrentSaveRootDirectory(), "peripheral-framework"), name);
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.theoriginalbit.peripheral.api.filesystem.IMount;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A read-only mount whose directory tree is held in a {@link MountIndex}, every metadata query is answered from the
+ * index and subclasses only provide the file contents
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+abstract class IndexedMount implements IMount, Closeable {
+    private final String location;
+
+    IndexedMount(String location) {
+        this.location = location;
+    }
+
+    /**
+     * @return the index of the mount, built when the mount was created
+     */
+    abstract MountIndex index();
+
+    /**
+     * @param node the index entry of a file
+     * @return the contents of the file
+     */
+    abstract InputStream open(MountIndex.Node node) throws IOException;
+
+    @Override
+    public String getMountLocation() {
+        return location;
+    }
+
+    @Override
+    public boolean exists(String path) throws IOException {
+        return index().get(path) != null;
+    }
+
+    @Override
+    public boolean isDirectory(String path) throws IOException {
+        final MountIndex.Node node = index().get(path);
+        return node != null && node.directory;
+    }
+
+    @Override
+    public void list(String path, List<String> contents) throws IOException {
+        final MountIndex.Node node = index().get(path);
+        if (node == null || !node.directory) {
+            throw new IOException("Not a directory");
+        }
+        contents.addAll(node.children);
+    }
+
+    @Override
+    public long getSize(String path) throws IOException {
+        final MountIndex.Node node = index().get(path);
+        if (node == null) {
+            throw new IOException("No such file");
+        }
+        return node.size;
+    }
+
+    @Override
+    public InputStream openForRead(String path) throws IOException {
+        final MountIndex.Node node = index().get(path);
+        if (node == null || node.directory) {
+            throw new IOException("No such file");
+        }
+        return open(node);
+    }
+
+    /**
+     * @param name the name of the entry, the source of a node indexed with {@link MountIndex#ofZip}
+     * @return a stream of the entry's decompressed contents
+     */
+    static InputStream openEntry(ZipFile zip, String name) throws IOException {
+        final ZipEntry entry = zip.getEntry(name);
+        if (entry == null) {
+            throw new IOException("No such file");
+        }
+        return zip.getInputStream(entry);
+    }
+}
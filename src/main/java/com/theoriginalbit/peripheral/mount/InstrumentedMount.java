@@ -0,0 +1,126 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.theoriginalbit.peripheral.mount.MountCounters.Operation;
+import dan200.computercraft.api.filesystem.IMount;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Counts the calls a computer makes to a mount, and the bytes it reads, into the mount's and the computer's counters
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+class InstrumentedMount implements IMount {
+    private final IMount mount;
+    protected final MountCounters mountCounters;
+    protected final MountCounters computerCounters;
+
+    InstrumentedMount(IMount mount, MountCounters mountCounters, MountCounters computerCounters) {
+        this.mount = mount;
+        this.mountCounters = mountCounters;
+        this.computerCounters = computerCounters;
+    }
+
+    @Override
+    public boolean exists(String path) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            return mount.exists(path);
+        } finally {
+            record(Operation.EXISTS, start);
+        }
+    }
+
+    @Override
+    public boolean isDirectory(String path) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            return mount.isDirectory(path);
+        } finally {
+            record(Operation.IS_DIRECTORY, start);
+        }
+    }
+
+    @Override
+    public void list(String path, List<String> contents) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            mount.list(path, contents);
+        } finally {
+            record(Operation.LIST, start);
+        }
+    }
+
+    @Override
+    public long getSize(String path) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            return mount.getSize(path);
+        } finally {
+            record(Operation.GET_SIZE, start);
+        }
+    }
+
+    @Override
+    public InputStream openForRead(String path) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            return new CountingInputStream(mount.openForRead(path));
+        } finally {
+            record(Operation.OPEN_FOR_READ, start);
+        }
+    }
+
+    protected final void record(Operation operation, long start) {
+        final long elapsed = System.nanoTime() - start;
+        mountCounters.record(operation, elapsed);
+        computerCounters.record(operation, elapsed);
+    }
+
+    private final class CountingInputStream extends FilterInputStream {
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int value = in.read();
+            if (value >= 0) {
+                counted(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = in.read(b, off, len);
+            if (read > 0) {
+                counted(read);
+            }
+            return read;
+        }
+
+        private void counted(long bytes) {
+            mountCounters.addBytesRead(bytes);
+            computerCounters.addBytesRead(bytes);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.theoriginalbit.peripheral.mount.MountCounters.Operation;
+import dan200.computercraft.api.filesystem.IWritableMount;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An {@link InstrumentedMount} over a writable mount, also counting the writes and the bytes written
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+final class InstrumentedWritableMount extends InstrumentedMount implements IWritableMount {
+    private final IWritableMount writable;
+
+    InstrumentedWritableMount(IWritableMount mount, MountCounters mountCounters, MountCounters computerCounters) {
+        super(mount, mountCounters, computerCounters);
+        writable = mount;
+    }
+
+    @Override
+    public void makeDirectory(String path) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            writable.makeDirectory(path);
+        } finally {
+            record(Operation.MAKE_DIRECTORY, start);
+        }
+    }
+
+    @Override
+    public void delete(String path) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            writable.delete(path);
+        } finally {
+            record(Operation.DELETE, start);
+        }
+    }
+
+    @Override
+    public OutputStream openForWrite(String path) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            return new CountingOutputStream(writable.openForWrite(path));
+        } finally {
+            record(Operation.OPEN_FOR_WRITE, start);
+        }
+    }
+
+    @Override
+    public OutputStream openForAppend(String path) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            return new CountingOutputStream(writable.openForAppend(path));
+        } finally {
+            record(Operation.OPEN_FOR_APPEND, start);
+        }
+    }
+
+    @Override
+    public long getRemainingSpace() throws IOException {
+        return writable.getRemainingSpace();
+    }
+
+    private final class CountingOutputStream extends FilterOutputStream {
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            counted(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            counted(len);
+        }
+
+        private void counted(long bytes) {
+            mountCounters.addBytesWritten(bytes);
+            computerCounters.addBytesWritten(bytes);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The path to content hash table of a {@link DedupMount}. Stored as one line per entry, {@code d\tpath} for a
+ * directory and {@code f\thash\tsize\tpath} for a file.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+final class Manifest {
+    private static final Splitter FIELDS = Splitter.on('\t').limit(4);
+
+    final TreeMap<String, Entry> entries = Maps.newTreeMap();
+
+    static Manifest load(File file) throws IOException {
+        final Manifest manifest = new Manifest();
+        if (!file.isFile()) {
+            return manifest;
+        }
+        for (String line : Files.readLines(file, Charsets.UTF_8)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            final List<String> fields = Lists.newArrayList(FIELDS.split(line));
+            if (fields.get(0).equals("d") && fields.size() == 2) {
+                manifest.entries.put(fields.get(1), Entry.DIRECTORY);
+            } else if (fields.get(0).equals("f") && fields.size() == 4) {
+                manifest.entries.put(fields.get(3), new Entry(fields.get(1), Long.parseLong(fields.get(2))));
+            } else {
+                throw new IOException("Malformed manifest " + file);
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest to a temporary file and moves it over the old one, so a crash leaves either version intact
+     */
+    void save(File file) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (java.util.Map.Entry<String, Entry> entry : entries.entrySet()) {
+            final Entry value = entry.getValue();
+            if (value.isDirectory()) {
+                builder.append("d\t");
+            } else {
+                builder.append("f\t").append(value.hash).append('\t').append(value.size).append('\t');
+            }
+            builder.append(entry.getKey()).append('\n');
+        }
+        final File temp = new File(file.getPath() + ".tmp");
+        Files.createParentDirs(temp);
+        Files.write(builder, temp, Charsets.UTF_8);
+        // rename over the old manifest so a crash leaves one or the other, deleting first only where that fails
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+    static final class Entry {
+        static final Entry DIRECTORY = new Entry(null, 0);
+
+        final String hash;
+        final long size;
+
+        Entry(String hash, long size) {
+            this.hash = hash;
+            this.size = size;
+        }
+
+        boolean isDirectory() {
+            return hash == null;
+        }
+    }
+}
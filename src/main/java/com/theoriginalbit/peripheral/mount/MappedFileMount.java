@@ -0,0 +1,267 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.theoriginalbit.peripheral.api.filesystem.IMount;
+import com.theoriginalbit.peripheral.util.PathUtil;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A read-only mount of a directory on disk whose files are memory-mapped on their first read. Every later read, from
+ * any computer, is a view over the same mapping: no file is opened, nothing is copied to the heap, and the pages are
+ * shared through the operating system's page cache. Suited to large datasets such as lookup tables or map tiles.
+ * <p/>
+ * A mapping is replaced when the size or modification time of its file changes. Files over 2GB can't be mapped and are
+ * streamed from disk instead. The mappings kept are bounded by their total size, the least recently used are dropped
+ * first and their memory is released once the streams still reading them are collected. A file truncated while it is
+ * being read makes the read fail with an IOException.
+ * <p/>
+ * Extend this class with a public no-arg constructor to use it with the Mount annotation.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public abstract class MappedFileMount implements IMount, Closeable {
+    public static final long DEFAULT_MAPPED_SIZE = 256 * 1024 * 1024;
+
+    private final String location;
+    private final File root;
+    private final Cache<String, Mapping> mappings;
+
+    /**
+     * @param mountLocation the location on the computer to mount to
+     * @param directory     the directory on disk to mount
+     */
+    protected MappedFileMount(String mountLocation, File directory) {
+        this(mountLocation, directory, DEFAULT_MAPPED_SIZE);
+    }
+
+    /**
+     * @param mountLocation the location on the computer to mount to
+     * @param directory     the directory on disk to mount
+     * @param mappedSize    the most bytes of files to keep mapped
+     */
+    protected MappedFileMount(String mountLocation, File directory, long mappedSize) {
+        location = mountLocation;
+        root = directory;
+        mappings = CacheBuilder.newBuilder()
+                .maximumWeight(mappedSize)
+                .weigher(new Weigher<String, Mapping>() {
+                    @Override
+                    public int weigh(String key, Mapping value) {
+                        return (int) value.length;
+                    }
+                })
+                // one segment, so a single large file can use the whole size
+                .concurrencyLevel(1)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public String getMountLocation() {
+        return location;
+    }
+
+    @Override
+    public boolean exists(String path) throws IOException {
+        return resolve(path).exists();
+    }
+
+    @Override
+    public boolean isDirectory(String path) throws IOException {
+        return resolve(path).isDirectory();
+    }
+
+    @Override
+    public void list(String path, List<String> contents) throws IOException {
+        final String[] names = resolve(path).list();
+        if (names == null) {
+            throw new IOException("Not a directory");
+        }
+        Collections.addAll(contents, names);
+    }
+
+    @Override
+    public long getSize(String path) throws IOException {
+        final File file = resolve(path);
+        if (!file.exists()) {
+            throw new IOException("No such file");
+        }
+        return file.isDirectory() ? 0 : file.length();
+    }
+
+    @Override
+    public InputStream openForRead(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        final File file = new File(root, key);
+        if (!file.isFile()) {
+            throw new IOException("No such file");
+        }
+        if (file.length() > Integer.MAX_VALUE) {
+            return new FileInputStream(file);
+        }
+
+        Mapping mapping = mappings.getIfPresent(key);
+        if (mapping == null || mapping.isStale(file)) {
+            mapping = new Mapping(file);
+            mappings.put(key, mapping);
+        }
+        // a duplicate shares the mapped memory but has its own position
+        return new MappedStream(file, mapping.length, new ByteBufferInputStream(mapping.buffer.duplicate()));
+    }
+
+    /**
+     * @return the hit, miss and eviction counts of the mappings
+     */
+    public CacheStats getMappingStats() {
+        return mappings.stats();
+    }
+
+    /**
+     * Drops every mapping, the memory is released once the streams still reading them are collected
+     */
+    @Override
+    public void close() throws IOException {
+        mappings.invalidateAll();
+    }
+
+    private File resolve(String path) {
+        return new File(root, PathUtil.normalize(path));
+    }
+
+    /**
+     * Touching a page of a mapping past the end of its truncated file faults. Depending on the JVM that is an
+     * InternalError or, for bulk copies, a crash, so the file's length is checked before reading each page that hasn't
+     * been checked yet. A truncation between the check and the read can still fault.
+     */
+    private static final class MappedStream extends FilterInputStream {
+        private static final int PAGE_SIZE = 4096;
+
+        private final File file;
+        private final long length;
+        private long position;
+        private long markPosition;
+        private long checkedUntil;
+
+        private MappedStream(File file, long length, InputStream in) {
+            super(in);
+            this.file = file;
+            this.length = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            check(1);
+            final int value;
+            try {
+                value = in.read();
+            } catch (InternalError e) {
+                throw changed();
+            }
+            if (value >= 0) {
+                ++position;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            check(len);
+            final int count;
+            try {
+                count = in.read(b, off, len);
+            } catch (InternalError e) {
+                throw changed();
+            }
+            if (count > 0) {
+                position += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = in.skip(n);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            in.mark(readLimit);
+            markPosition = position;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            in.reset();
+            position = markPosition;
+        }
+
+        private void check(int count) throws IOException {
+            final long end = Math.min(length, position + count);
+            if (end <= checkedUntil) {
+                return;
+            }
+            if (file.length() < length) {
+                throw changed();
+            }
+            checkedUntil = (end + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+        }
+
+        private static IOException changed() {
+            return new IOException("File changed while being read");
+        }
+    }
+
+    private static final class Mapping {
+        private final MappedByteBuffer buffer;
+        private final long length;
+        private final long lastModified;
+
+        private Mapping(File file) throws IOException {
+            lastModified = file.lastModified();
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                // the mapping stays valid once the file is closed, so no descriptor is held open
+                final FileChannel channel = raf.getChannel();
+                length = channel.size();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            } finally {
+                raf.close();
+            }
+        }
+
+        private boolean isStale(File file) {
+            return file.length() != length || file.lastModified() != lastModified;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.theoriginalbit.peripheral.util.PathUtil;
+import dan200.computercraft.api.filesystem.IWritableMount;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A writable mount held entirely in memory, for scratch space that never touches the disk. File contents are stored in
+ * chunks from a {@link ChunkPool} and the chunks a computer holds are limited by its capacity. Everything is discarded
+ * with {@link #discard()}.
+ * <p/>
+ * A stream that is open for reading keeps the contents it was opened with, when a file is rewritten or deleted while
+ * being read its chunks are left to the garbage collector rather than reused.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public class MemoryMount implements IWritableMount {
+    private final ChunkPool pool;
+    private final long capacity;
+    private final TreeMap<String, Node> nodes = Maps.newTreeMap();
+    private long chunks;
+
+    /**
+     * @param pool     the pool to take chunks from
+     * @param capacity the number of bytes the computer may store, rounded up to whole chunks
+     */
+    public MemoryMount(ChunkPool pool, long capacity) {
+        this.pool = pool;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public synchronized boolean exists(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        return key.isEmpty() || nodes.containsKey(key);
+    }
+
+    @Override
+    public synchronized boolean isDirectory(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        if (key.isEmpty()) {
+            return true;
+        }
+        final Node node = nodes.get(key);
+        return node != null && node.directory;
+    }
+
+    @Override
+    public synchronized void list(String path, List<String> contents) throws IOException {
+        final String key = PathUtil.normalize(path);
+        if (!isDirectory(key)) {
+            throw new IOException("Not a directory");
+        }
+        final String prefix = key.isEmpty() ? "" : key + '/';
+        for (String child : subtree(prefix).keySet()) {
+            final String name = child.substring(prefix.length());
+            if (name.indexOf('/') < 0) {
+                contents.add(name);
+            }
+        }
+    }
+
+    @Override
+    public synchronized long getSize(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        if (key.isEmpty()) {
+            return 0;
+        }
+        final Node node = nodes.get(key);
+        if (node == null) {
+            throw new IOException("No such file");
+        }
+        return node.length;
+    }
+
+    @Override
+    public synchronized InputStream openForRead(String path) throws IOException {
+        final Node node = nodes.get(PathUtil.normalize(path));
+        if (node == null || node.directory) {
+            throw new IOException("No such file");
+        }
+        ++node.readers;
+        return new ChunkInputStream(node, Lists.newArrayList(node.chunks), node.length);
+    }
+
+    @Override
+    public synchronized void makeDirectory(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        if (key.isEmpty() || isDirectory(key)) {
+            return;
+        }
+        if (nodes.containsKey(key)) {
+            throw new IOException("File exists");
+        }
+        checkParents(key);
+        addParents(key);
+        nodes.put(key, new Node(true));
+    }
+
+    @Override
+    public synchronized void delete(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        final Node node = nodes.remove(key);
+        if (node != null) {
+            node.removed = true;
+            release(node);
+        }
+        if (key.isEmpty() || node != null && node.directory) {
+            final Iterator<Node> it = subtree(key.isEmpty() ? "" : key + '/').values().iterator();
+            while (it.hasNext()) {
+                final Node child = it.next();
+                child.removed = true;
+                release(child);
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public OutputStream openForWrite(String path) throws IOException {
+        return open(PathUtil.normalize(path), false);
+    }
+
+    @Override
+    public OutputStream openForAppend(String path) throws IOException {
+        return open(PathUtil.normalize(path), true);
+    }
+
+    @Override
+    public synchronized long getRemainingSpace() throws IOException {
+        return Math.max(0, capacity - chunks * ChunkPool.CHUNK_SIZE);
+    }
+
+    /**
+     * @return the bytes of the chunks currently held
+     */
+    public synchronized long getUsedSpace() {
+        return chunks * ChunkPool.CHUNK_SIZE;
+    }
+
+    /**
+     * Drops every file, giving the chunks back to the pool
+     */
+    public synchronized void discard() {
+        for (Node node : nodes.values()) {
+            node.removed = true;
+            release(node);
+        }
+        nodes.clear();
+    }
+
+    private synchronized OutputStream open(String key, boolean append) throws IOException {
+        if (key.isEmpty() || isDirectory(key)) {
+            throw new IOException("Cannot write to directory");
+        }
+        checkParents(key);
+        Node node = nodes.get(key);
+        if (node == null) {
+            addParents(key);
+            node = new Node(false);
+            nodes.put(key, node);
+        } else if (!append) {
+            release(node);
+        }
+        return new ChunkOutputStream(node);
+    }
+
+    private synchronized void write(Node node, byte[] b, int off, int len) throws IOException {
+        if (node.removed) {
+            throw new IOException("File was deleted");
+        }
+        while (len > 0) {
+            final int offset = (int) (node.length % ChunkPool.CHUNK_SIZE);
+            if (offset == 0 && node.length == (long) node.chunks.size() * ChunkPool.CHUNK_SIZE) {
+                if ((chunks + 1) * ChunkPool.CHUNK_SIZE > capacity) {
+                    throw new IOException("Out of space");
+                }
+                node.chunks.add(pool.allocate());
+                ++chunks;
+            }
+            final byte[] chunk = node.chunks.get(node.chunks.size() - 1);
+            final int count = Math.min(len, ChunkPool.CHUNK_SIZE - offset);
+            System.arraycopy(b, off, chunk, offset, count);
+            node.length += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    private synchronized void closeReader(Node node) {
+        --node.readers;
+    }
+
+    /**
+     * Empties the file, the chunks are only reused if nothing is reading them
+     */
+    private void release(Node node) {
+        for (byte[] chunk : node.chunks) {
+            if (node.readers == 0) {
+                pool.free(chunk);
+            } else {
+                pool.discard(chunk);
+            }
+        }
+        chunks -= node.chunks.size();
+        node.chunks = Lists.newArrayList();
+        node.length = 0;
+    }
+
+    private SortedMap<String, Node> subtree(String prefix) {
+        return prefix.isEmpty() ? nodes : nodes.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    private void checkParents(String key) throws IOException {
+        for (String parent = PathUtil.parent(key); !parent.isEmpty(); parent = PathUtil.parent(parent)) {
+            final Node node = nodes.get(parent);
+            if (node != null && !node.directory) {
+                throw new IOException("Access denied");
+            }
+        }
+    }
+
+    private void addParents(String key) {
+        for (String parent = PathUtil.parent(key); !parent.isEmpty(); parent = PathUtil.parent(parent)) {
+            if (nodes.containsKey(parent)) {
+                return;
+            }
+            nodes.put(parent, new Node(true));
+        }
+    }
+
+    private static final class Node {
+        private final boolean directory;
+        private ArrayList<byte[]> chunks = Lists.newArrayList();
+        private long length;
+        private int readers;
+        private boolean removed;
+
+        private Node(boolean directory) {
+            this.directory = directory;
+        }
+    }
+
+    private final class ChunkOutputStream extends OutputStream {
+        private final Node node;
+        private boolean closed;
+
+        private ChunkOutputStream(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            MemoryMount.this.write(node, b, off, len);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private final class ChunkInputStream extends InputStream {
+        private final Node node;
+        private final List<byte[]> chunks;
+        private final long length;
+        private long position;
+        private boolean closed;
+
+        private ChunkInputStream(Node node, List<byte[]> chunks, long length) {
+            this.node = node;
+            this.chunks = chunks;
+            this.length = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (closed || position >= length) {
+                return -1;
+            }
+            final byte value = chunks.get((int) (position / ChunkPool.CHUNK_SIZE))[(int) (position % ChunkPool.CHUNK_SIZE)];
+            ++position;
+            return value & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (closed || position >= length) {
+                return -1;
+            }
+            int read = 0;
+            while (read < len && position < length) {
+                final int offset = (int) (position % ChunkPool.CHUNK_SIZE);
+                final int count = (int) Math.min(Math.min(len - read, ChunkPool.CHUNK_SIZE - offset), length - position);
+                System.arraycopy(chunks.get((int) (position / ChunkPool.CHUNK_SIZE)), offset, b, off + read, count);
+                position += count;
+                read += count;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            final long skipped = Math.max(0, Math.min(n, length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, length - position));
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                closeReader(node);
+            }
+        }
+    }
+}
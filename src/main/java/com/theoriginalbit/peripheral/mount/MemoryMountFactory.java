@@ -0,0 +1,59 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.base.Preconditions;
+import com.theoriginalbit.peripheral.PeripheralFramework;
+import com.theoriginalbit.peripheral.api.filesystem.IMountFactory;
+import dan200.computercraft.api.filesystem.IMount;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+
+/**
+ * Gives every computer an empty {@link MemoryMount}, such as a {@code tmp} directory. The contents are discarded when
+ * the last peripheral declaring the factory detaches from the computer, or the server stops.
+ * <p/>
+ * Extend this class with a public no-arg constructor to use it with the Mount annotation.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public abstract class MemoryMountFactory implements IMountFactory {
+    private final String location;
+    private final long capacity;
+
+    /**
+     * @param mountLocation the location on the computer to mount to
+     * @param capacity      the number of bytes each computer may store
+     */
+    protected MemoryMountFactory(String mountLocation, long capacity) {
+        location = Preconditions.checkNotNull(mountLocation);
+        this.capacity = capacity;
+    }
+
+    @Override
+    public String getMountLocation() {
+        return location;
+    }
+
+    @Override
+    public IMount createMount(IComputerAccess computer) {
+        return new MemoryMount(PeripheralFramework.getChunkPool(), capacity);
+    }
+
+    @Override
+    public void releaseMount(IComputerAccess computer, IMount mount) {
+        ((MemoryMount) mount).discard();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The I/O a mount, or a computer, has done through its mounts: a count and latency histogram for every operation and
+ * the bytes read and written.
+ * <p/>
+ * Latencies are bucketed by powers of two microseconds, bucket 0 holds calls under a microsecond and bucket {@code i}
+ * those from {@code 2^(i-1)} up to {@code 2^i} microseconds; the last bucket holds everything slower.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class MountCounters {
+    public static final int BUCKETS = 32;
+
+    public enum Operation {
+        EXISTS, IS_DIRECTORY, LIST, GET_SIZE, OPEN_FOR_READ, OPEN_FOR_WRITE, OPEN_FOR_APPEND, MAKE_DIRECTORY, DELETE
+    }
+
+    private static final int OPERATIONS = Operation.values().length;
+
+    private final AtomicLongArray counts = new AtomicLongArray(OPERATIONS);
+    private final AtomicLongArray latencies = new AtomicLongArray(OPERATIONS * BUCKETS);
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    void record(Operation operation, long nanos) {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        counts.incrementAndGet(operation.ordinal());
+        latencies.incrementAndGet(operation.ordinal() * BUCKETS + bucket);
+    }
+
+    void addBytesRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    void addBytesWritten(long bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    public long getCount(Operation operation) {
+        return counts.get(operation.ordinal());
+    }
+
+    /**
+     * @return a copy of the operation's latency histogram, {@link #BUCKETS} long
+     */
+    public long[] getLatencyHistogram(Operation operation) {
+        final long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i) {
+            histogram[i] = latencies.get(operation.ordinal() * BUCKETS + i);
+        }
+        return histogram;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("MountCounters{");
+        for (Operation operation : Operation.values()) {
+            builder.append(operation.name().toLowerCase()).append('=').append(getCount(operation)).append(", ");
+        }
+        builder.append("read=").append(getBytesRead()).append(", written=").append(getBytesWritten());
+        return builder.append('}').toString();
+    }
+}
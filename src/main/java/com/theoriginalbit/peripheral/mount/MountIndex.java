@@ -0,0 +1,174 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.theoriginalbit.peripheral.util.PathUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An immutable directory tree of a read-only mount, built once so that metadata queries are a single map lookup
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+final class MountIndex {
+    private final ImmutableMap<String, Node> nodes;
+
+    private MountIndex(ImmutableMap<String, Node> nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Indexes the entries of a zip file from its central directory
+     *
+     * @param zip            the archive
+     * @param prefix         the directory within the archive that becomes the root, or an empty string for all of it
+     * @param cacheThreshold files up to this size are read into the index, a negative value reads none of them
+     * @return the index, the source of each file is the name of its entry
+     * @throws IOException if a cached file couldn't be read
+     */
+    static MountIndex ofZip(ZipFile zip, String prefix, int cacheThreshold) throws IOException {
+        final String root = PathUtil.normalize(prefix);
+        final Builder builder = new Builder();
+        final Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            final ZipEntry entry = entries.nextElement();
+            final String name = PathUtil.normalize(entry.getName());
+            final String path;
+            if (root.isEmpty()) {
+                path = name;
+            } else if (name.startsWith(root + '/')) {
+                path = name.substring(root.length() + 1);
+            } else {
+                continue;
+            }
+
+            if (entry.isDirectory()) {
+                builder.addDirectory(path);
+            } else if (entry.getSize() >= 0 && entry.getSize() <= cacheThreshold) {
+                final InputStream stream = zip.getInputStream(entry);
+                try {
+                    final byte[] data = ByteStreams.toByteArray(stream);
+                    builder.addFile(path, data.length, entry.getName(), data);
+                } finally {
+                    stream.close();
+                }
+            } else {
+                builder.addFile(path, entry.getSize(), entry.getName(), null);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param path the path as supplied by ComputerCraft
+     * @return the entry at the path, or {@code null} if there isn't one
+     */
+    Node get(String path) {
+        return nodes.get(PathUtil.normalize(path));
+    }
+
+    int size() {
+        return nodes.size();
+    }
+
+    static final class Node {
+        final boolean directory;
+        final long size;
+        final List<String> children;
+        final String source;
+        final byte[] data;
+
+        private Node(boolean directory, long size, List<String> children, String source, byte[] data) {
+            this.directory = directory;
+            this.size = size;
+            this.children = children;
+            this.source = source;
+            this.data = data;
+        }
+    }
+
+    static final class Builder {
+        private final HashMap<String, TreeSet<String>> directories = Maps.newHashMap();
+        private final HashMap<String, Node> files = Maps.newHashMap();
+
+        Builder() {
+            directories.put("", Sets.<String>newTreeSet());
+        }
+
+        /**
+         * Adds a directory, and any missing parents, to the tree
+         *
+         * @param path the path of the directory within the mount
+         */
+        Builder addDirectory(String path) {
+            final String normalized = PathUtil.normalize(path);
+            if (!directories.containsKey(normalized)) {
+                directories.put(normalized, Sets.<String>newTreeSet());
+                // the root always exists, so this ends there
+                final String parent = PathUtil.parent(normalized);
+                addDirectory(parent);
+                directories.get(parent).add(PathUtil.name(normalized));
+            }
+            return this;
+        }
+
+        /**
+         * Adds a file, and any missing parent directories, to the tree
+         *
+         * @param path   the path of the file within the mount
+         * @param size   the size of the file in bytes
+         * @param source where the mount reads the file from when its content isn't cached
+         * @param data   the cached content of the file, or {@code null} if it is read from the source
+         */
+        Builder addFile(String path, long size, String source, byte[] data) {
+            final String normalized = PathUtil.normalize(path);
+            final String parent = PathUtil.parent(normalized);
+            addDirectory(parent);
+            directories.get(parent).add(PathUtil.name(normalized));
+            files.put(normalized, new Node(false, size, ImmutableList.<String>of(), source, data));
+            return this;
+        }
+
+        MountIndex build() {
+            final ImmutableMap.Builder<String, Node> nodes = ImmutableMap.builder();
+            for (Map.Entry<String, Node> file : files.entrySet()) {
+                // a file and a directory with the same path, the directory wins
+                if (!directories.containsKey(file.getKey())) {
+                    nodes.put(file);
+                }
+            }
+            for (Map.Entry<String, TreeSet<String>> dir : directories.entrySet()) {
+                final List<String> children = ImmutableList.copyOf(dir.getValue());
+                nodes.put(dir.getKey(), new Node(true, 0, children, null, null));
+            }
+            return new MountIndex(nodes.build());
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.theoriginalbit.peripheral.api.filesystem.IMount;
+import com.theoriginalbit.peripheral.api.filesystem.IMountFactory;
+import com.theoriginalbit.peripheral.util.Log;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+import dan200.computercraft.api.filesystem.IWritableMount;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+import net.minecraft.util.IntHashMap;
+import net.minecraftforge.event.world.WorldEvent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a reference count for every mount location of every computer, so that when several framework peripherals
+ * attached to one computer want the same location it is mounted once, on the first attach, and unmounted once, on the
+ * last detach.
+ * <p/>
+ * ComputerCraft ties a mount to the IComputerAccess that created it and removes it when that peripheral detaches. When
+ * the peripheral that performed a mount detaches while others still use the location, the mount is handed over to one
+ * of the remaining peripherals.
+ * <p/>
+ * Mounts from an {@link IMountFactory} are created for the computer on the first reference and released to the factory
+ * on the last, or when the server stops. Every mount is instrumented for the computer it is mounted to, see
+ * {@link #getStatistics()}, until the computer releases its last mount.
+ * <p/>
+ * Computers are spread over a fixed number of stripes by id, each stripe is an int keyed map guarded by its own lock.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class MountManager {
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicLong mountCount = new AtomicLong();
+    private final AtomicLong unmountCount = new AtomicLong();
+    private final AtomicLong handoverCount = new AtomicLong();
+    private final AtomicInteger activeMounts = new AtomicInteger();
+    private final Set<MountedLocation> created = Sets.newHashSet();
+    private final MountStatistics statistics = new MountStatistics();
+
+    public MountManager() {
+        for (int i = 0; i < STRIPES; ++i) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Adds a reference to the mount's location on the computer, mounting it if this is the first reference
+     *
+     * @param computer the peripheral's access to the computer
+     * @param mount    the mount to make available at its location
+     */
+    public void acquire(IComputerAccess computer, IMount mount) {
+        acquire(computer, null, mount);
+    }
+
+    /**
+     * Adds a reference to the mount's location on the computer, mounting it if this is the first reference
+     *
+     * @param computer the peripheral's access to the computer
+     * @param type     the type of the peripheral, which its I/O is counted under in the statistics
+     * @param mount    the mount to make available at its location
+     */
+    public void acquire(IComputerAccess computer, String type, IMount mount) {
+        acquire(computer, type, mount.getMountLocation(), mount);
+    }
+
+    /**
+     * Adds a reference to the factory's location on the computer, creating and mounting a mount for the computer if this
+     * is the first reference
+     *
+     * @param computer the peripheral's access to the computer
+     * @param factory  the factory of the computer's mount
+     */
+    public void acquire(IComputerAccess computer, IMountFactory factory) {
+        acquire(computer, null, factory);
+    }
+
+    /**
+     * Adds a reference to the factory's location on the computer, creating and mounting a mount for the computer if this
+     * is the first reference
+     *
+     * @param computer the peripheral's access to the computer
+     * @param type     the type of the peripheral, which its I/O is counted under in the statistics
+     * @param factory  the factory of the computer's mount
+     */
+    public void acquire(IComputerAccess computer, String type, IMountFactory factory) {
+        acquire(computer, type, factory.getMountLocation(), factory);
+    }
+
+    /**
+     * Removes a reference to the mount's location on the computer, unmounting it if this was the last reference
+     *
+     * @param computer the peripheral's access to the computer
+     * @param mount    the mount that was previously acquired
+     */
+    public void release(IComputerAccess computer, IMount mount) {
+        release(computer, mount.getMountLocation());
+    }
+
+    /**
+     * Removes a reference to the factory's location on the computer, unmounting and releasing the computer's mount if
+     * this was the last reference
+     *
+     * @param computer the peripheral's access to the computer
+     * @param factory  the factory that was previously acquired
+     */
+    public void release(IComputerAccess computer, IMountFactory factory) {
+        release(computer, factory.getMountLocation());
+    }
+
+    private void acquire(IComputerAccess computer, String type, String location, Object source) {
+        final int id = computer.getID();
+        final Stripe stripe = stripeFor(id);
+        synchronized (stripe) {
+            ComputerMounts mounts = (ComputerMounts) stripe.computers.lookup(id);
+            if (mounts == null) {
+                mounts = new ComputerMounts();
+                stripe.computers.addKey(id, mounts);
+            }
+
+            MountedLocation mounted = mounts.locations.get(location);
+            if (mounted == null) {
+                mounted = new MountedLocation(type, source);
+                mounts.locations.put(location, mounted);
+            }
+
+            // 0 -> 1, this is the first peripheral wanting the location
+            if (mounted.holders.isEmpty()) {
+                mounted.mount = resolve(computer, source);
+                if (source instanceof IMountFactory && mounted.mount != null) {
+                    synchronized (created) {
+                        created.add(mounted);
+                    }
+                }
+                mounted.assigned = mount(computer, mounted.type, location, mounted.mount);
+                mounted.owner = computer;
+                mountCount.incrementAndGet();
+                activeMounts.incrementAndGet();
+            }
+            mounted.holders.add(computer);
+        }
+    }
+
+    private void release(IComputerAccess computer, String location) {
+        final int id = computer.getID();
+        final Stripe stripe = stripeFor(id);
+        synchronized (stripe) {
+            final ComputerMounts mounts = (ComputerMounts) stripe.computers.lookup(id);
+            // if there is no entry for this computer something has gone seriously wrong, but lets ignore it
+            if (mounts == null) {
+                return;
+            }
+            final MountedLocation mounted = mounts.locations.get(location);
+            if (mounted == null || !mounted.holders.remove(computer)) {
+                return;
+            }
+
+            if (mounted.holders.isEmpty()) {
+                // 1 -> 0, this was the last peripheral wanting the location
+                unmount(mounted);
+                if (mounted.source instanceof IMountFactory && mounted.mount != null) {
+                    synchronized (created) {
+                        created.remove(mounted);
+                    }
+                    ((IMountFactory) mounted.source).releaseMount(computer, mounted.mount);
+                }
+                mounts.locations.remove(location);
+                unmountCount.incrementAndGet();
+                activeMounts.decrementAndGet();
+            } else if (mounted.owner == computer) {
+                // ComputerCraft would remove the mount when this peripheral detaches, move it to one that remains
+                unmount(mounted);
+                mounted.owner = mounted.holders.get(0);
+                mounted.assigned = mount(mounted.owner, mounted.type, location, mounted.mount);
+                handoverCount.incrementAndGet();
+            }
+
+            // the computer no longer uses any framework mounts, forget about it
+            if (mounts.locations.isEmpty()) {
+                stripe.computers.removeObject(id);
+                statistics.forget(id);
+            }
+        }
+    }
+
+    /**
+     * Forgets every reference, used when the server stops as the computers go away with it. Mounts created by factories
+     * are released back to their factory.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.computers.clearMap();
+            }
+        }
+        activeMounts.set(0);
+        statistics.forgetComputers();
+
+        final MountedLocation[] remaining;
+        synchronized (created) {
+            remaining = created.toArray(new MountedLocation[created.size()]);
+            created.clear();
+        }
+        for (MountedLocation mounted : remaining) {
+            ((IMountFactory) mounted.source).releaseMount(mounted.owner, mounted.mount);
+        }
+    }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        if (!event.world.isRemote && event.world.provider.dimensionId == 0) {
+            clear();
+        }
+    }
+
+    /**
+     * @return how many times a location was mounted to a computer
+     */
+    public long getMountCount() {
+        return mountCount.get();
+    }
+
+    /**
+     * @return how many times a location was unmounted from a computer
+     */
+    public long getUnmountCount() {
+        return unmountCount.get();
+    }
+
+    /**
+     * @return how many times a mount was moved to another peripheral as the one that mounted it detached
+     */
+    public long getHandoverCount() {
+        return handoverCount.get();
+    }
+
+    /**
+     * @return how many locations are currently mounted across all computers
+     */
+    public int getActiveMountCount() {
+        return activeMounts.get();
+    }
+
+    /**
+     * @return the I/O done through the mounts, by mount and by computer
+     */
+    public MountStatistics getStatistics() {
+        return statistics;
+    }
+
+    private Stripe stripeFor(int id) {
+        return stripes[id & (STRIPES - 1)];
+    }
+
+    private static dan200.computercraft.api.filesystem.IMount resolve(IComputerAccess computer, Object source) {
+        if (source instanceof IMountFactory) {
+            try {
+                return ((IMountFactory) source).createMount(computer);
+            } catch (IOException e) {
+                Log.error("Unable to create the mount for computer %d: %s", computer.getID(), e.getMessage());
+                return null;
+            }
+        }
+        return (dan200.computercraft.api.filesystem.IMount) source;
+    }
+
+    private String mount(IComputerAccess computer, String type, String location,
+                         dan200.computercraft.api.filesystem.IMount mount) {
+        if (mount == null) {
+            return null;
+        }
+        final dan200.computercraft.api.filesystem.IMount instrumented =
+                statistics.instrument(computer.getID(), type, location, mount);
+        if (instrumented instanceof IWritableMount) {
+            return computer.mountWritable(location, (IWritableMount) instrumented);
+        }
+        return computer.mount(location, instrumented);
+    }
+
+    private static void unmount(MountedLocation mounted) {
+        // a null location means ComputerCraft refused the mount
+        if (mounted.assigned != null) {
+            mounted.owner.unmount(mounted.assigned);
+        }
+    }
+
+    private static final class Stripe {
+        private final IntHashMap computers = new IntHashMap();
+    }
+
+    private static final class ComputerMounts {
+        private final HashMap<String, MountedLocation> locations = Maps.newHashMap();
+    }
+
+    private static final class MountedLocation {
+        private final String type;
+        private final Object source;
+        private final ArrayList<IComputerAccess> holders = Lists.newArrayListWithCapacity(1);
+        private dan200.computercraft.api.filesystem.IMount mount;
+        private IComputerAccess owner;
+        private String assigned;
+
+        private MountedLocation(String type, Object source) {
+            this.type = type;
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.theoriginalbit.peripheral.util.Log;
+import cpw.mods.fml.common.eventhandler.EventPriority;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+import cpw.mods.fml.common.gameevent.TickEvent;
+import net.minecraftforge.event.world.WorldEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the shared instances of mounts and mount factories declared through
+ * {@link com.theoriginalbit.peripheral.api.event.Mount}, one per class and key. Once nothing references an instance
+ * it stays in the pool for the idle delay, so a peripheral re-attached soon after doesn't make a mount that indexes its
+ * content on creation do it again, and is then evicted. Evicted mounts, and every pooled mount when the server stops,
+ * are closed if they implement {@link Closeable} so they release their caches and file handles.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class MountPool {
+    public static final long DEFAULT_IDLE_DELAY = TimeUnit.SECONDS.toNanos(30);
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final HashMap<Key, Entry> entries = Maps.newHashMap();
+    private final IdentityHashMap<Object, Entry> byMount = Maps.newIdentityHashMap();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong reusedCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private volatile long idleDelay = DEFAULT_IDLE_DELAY;
+    private long nextSweep;
+
+    /**
+     * Gets the shared mount for the class and key, creating it if it isn't in the pool
+     *
+     * @param clazz the mount or mount factory class, which must have a public no-arg constructor
+     * @param key   the key distinguishing separate shared instances of the same class
+     * @return the shared mount
+     * @throws Exception if the mount could not be created
+     */
+    public synchronized <T> T acquire(Class<T> clazz, String key) throws Exception {
+        final Key k = new Key(clazz, key);
+        Entry entry = entries.get(k);
+        if (entry == null) {
+            entry = new Entry(clazz.newInstance());
+            entries.put(k, entry);
+            byMount.put(entry.mount, entry);
+            createdCount.incrementAndGet();
+        } else if (entry.references == 0) {
+            reusedCount.incrementAndGet();
+        }
+        ++entry.references;
+        return clazz.cast(entry.mount);
+    }
+
+    /**
+     * Drops a reference to a shared mount, once nothing references it the mount is evicted after the idle delay
+     *
+     * @param mount a mount previously returned from {@link #acquire(Class, String)}
+     */
+    public void release(Object mount) {
+        synchronized (this) {
+            final Entry entry = byMount.get(mount);
+            if (entry == null || entry.references == 0 || --entry.references > 0) {
+                return;
+            }
+            entry.idleSince = System.nanoTime();
+            if (idleDelay > 0) {
+                return;
+            }
+        }
+        evictIdle();
+    }
+
+    /**
+     * @param nanos how long a shared mount nothing references stays pooled, or 0 to evict it as soon as it is released
+     */
+    public void setIdleDelay(long nanos) {
+        Preconditions.checkArgument(nanos >= 0, "idle delay cannot be negative");
+        idleDelay = nanos;
+    }
+
+    /**
+     * Evicts and closes the shared mounts nothing has referenced for the idle delay
+     */
+    public void evictIdle() {
+        final long now = System.nanoTime();
+        final List<Object> evicted = Lists.newArrayList();
+        synchronized (this) {
+            final Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                final Entry entry = it.next();
+                if (entry.references == 0 && now - entry.idleSince >= idleDelay) {
+                    it.remove();
+                    byMount.remove(entry.mount);
+                    evicted.add(entry.mount);
+                }
+            }
+        }
+        evictedCount.addAndGet(evicted.size());
+        close(evicted.toArray());
+    }
+
+    /**
+     * Empties the pool and closes the mounts, used when the server stops
+     */
+    public void clear() {
+        final Object[] mounts;
+        synchronized (this) {
+            mounts = byMount.keySet().toArray();
+            entries.clear();
+            byMount.clear();
+        }
+        close(mounts);
+    }
+
+    @SubscribeEvent
+    public void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            final long now = System.nanoTime();
+            synchronized (this) {
+                if (now - nextSweep < 0) {
+                    return;
+                }
+                nextSweep = now + SWEEP_INTERVAL;
+            }
+            evictIdle();
+        }
+    }
+
+    /**
+     * Runs after the MountManager has released the computers' mounts, so factories are closed last
+     */
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public void onWorldUnload(WorldEvent.Unload event) {
+        if (!event.world.isRemote && event.world.provider.dimensionId == 0) {
+            clear();
+        }
+    }
+
+    /**
+     * @return how many shared mounts are currently pooled, whether or not they are in use
+     */
+    public synchronized int getPooledCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return how many shared mounts are pooled but not used by any peripheral
+     */
+    public synchronized int getIdleCount() {
+        int idle = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.references == 0) {
+                ++idle;
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * @return how many shared mounts have been created since the game started
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * @return how many times an idle pooled mount was used again instead of being created
+     */
+    public long getReusedCount() {
+        return reusedCount.get();
+    }
+
+    /**
+     * @return how many shared mounts have been evicted after sitting idle
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    private static void close(Object[] mounts) {
+        for (Object mount : mounts) {
+            if (mount instanceof Closeable) {
+                try {
+                    ((Closeable) mount).close();
+                } catch (IOException e) {
+                    Log.warn("Failed to close shared mount %s: %s", mount, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static final class Key {
+        private final Class<?> clazz;
+        private final String key;
+
+        private Key(Class<?> clazz, String key) {
+            this.clazz = clazz;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return clazz == other.clazz && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * clazz.hashCode() + key.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        private final Object mount;
+        private int references;
+        private long idleSince;
+
+        private Entry(Object mount) {
+            this.mount = mount;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import dan200.computercraft.api.filesystem.IMount;
+import dan200.computercraft.api.filesystem.IWritableMount;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collects the I/O of every mount the {@link MountManager} mounts, by mount and by computer. Mounts are told apart by
+ * the type of the peripheral that mounted them, their location and their class, so the shared instances of a mount
+ * class are counted together for each peripheral type. A location several peripheral types share on one computer is
+ * counted under the type that mounted it.
+ * <p/>
+ * A {@link CachedMount} is counted beneath its cache, so reads served from cached blocks are not counted as I/O of the
+ * mount. The counters of a computer are dropped once its last mount is released.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class MountStatistics {
+    private final ConcurrentMap<String, MountCounters> byMount = Maps.newConcurrentMap();
+    private final ConcurrentMap<Integer, MountCounters> byComputer = Maps.newConcurrentMap();
+
+    /**
+     * @return the counters of every mount, keyed by peripheral type, location and class name
+     */
+    public Map<String, MountCounters> getMountCounters() {
+        return ImmutableMap.copyOf(byMount);
+    }
+
+    /**
+     * @return the counters of every computer, keyed by computer id
+     */
+    public Map<Integer, MountCounters> getComputerCounters() {
+        return ImmutableMap.copyOf(byComputer);
+    }
+
+    /**
+     * @return the counters of the computer, or null if it has no mounts
+     */
+    public MountCounters getComputerCounters(int id) {
+        return byComputer.get(id);
+    }
+
+    /**
+     * Forgets everything counted so far
+     */
+    public void reset() {
+        byMount.clear();
+        byComputer.clear();
+    }
+
+    IMount instrument(int computer, String type, String location, IMount mount) {
+        final MountCounters mountCounters = counters(byMount, key(type, location, mount));
+        final MountCounters computerCounters = counters(byComputer, computer);
+        if (mount instanceof CachedMount) {
+            final CachedMount cached = (CachedMount) mount;
+            return cached.through(instrument(cached.target, mountCounters, computerCounters));
+        }
+        return instrument(mount, mountCounters, computerCounters);
+    }
+
+    void forget(int computer) {
+        byComputer.remove(computer);
+    }
+
+    void forgetComputers() {
+        byComputer.clear();
+    }
+
+    private static IMount instrument(IMount mount, MountCounters mountCounters, MountCounters computerCounters) {
+        if (mount instanceof IWritableMount) {
+            return new InstrumentedWritableMount((IWritableMount) mount, mountCounters, computerCounters);
+        }
+        return new InstrumentedMount(mount, mountCounters, computerCounters);
+    }
+
+    private static String key(String type, String location, IMount mount) {
+        // name the mount being cached rather than the cache
+        final IMount named = mount instanceof CachedMount ? ((CachedMount) mount).getMount() : mount;
+        final String key = location + " (" + named.getClass().getName() + ")";
+        return type == null ? key : type + ": " + key;
+    }
+
+    private static <K> MountCounters counters(ConcurrentMap<K, MountCounters> map, K key) {
+        MountCounters counters = map.get(key);
+        if (counters == null) {
+            final MountCounters created = new MountCounters();
+            counters = map.putIfAbsent(key, created);
+            if (counters == null) {
+                counters = created;
+            }
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.theoriginalbit.peripheral.util.PathUtil;
+import dan200.computercraft.api.filesystem.IMount;
+import dan200.computercraft.api.filesystem.IWritableMount;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A writable mount that layers a writable delta over a read-only base, the base is never modified and may be shared by
+ * any number of overlays. Reads fall through to the base unless the delta has the path, writes always go to the delta.
+ * Appending to a file that only exists in the base copies it up into the delta first.
+ * <p/>
+ * Deleting a base path records a whiteout, which hides the path and everything below it in the base. A whiteout is
+ * kept when the path is written again so the base contents below a recreated directory stay hidden. Whiteouts are kept
+ * in a hidden file at the root of the delta.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public class OverlayMount implements IWritableMount, Closeable {
+    private static final String WHITEOUTS = ".whiteouts";
+    private static final Splitter LINES = Splitter.on('\n').omitEmptyStrings();
+    private static final Joiner JOINER = Joiner.on('\n');
+
+    private final IMount base;
+    private final IWritableMount delta;
+    private final HashSet<String> whiteouts = Sets.newHashSet();
+    private final AtomicLong copyUpCount = new AtomicLong();
+
+    /**
+     * @param base  the read-only contents every overlay starts with
+     * @param delta the writable mount to store this overlay's changes in
+     * @throws IOException if the whiteouts could not be read from the delta
+     */
+    public OverlayMount(IMount base, IWritableMount delta) throws IOException {
+        this.base = base;
+        this.delta = delta;
+        if (delta.exists(WHITEOUTS)) {
+            final InputStream in = delta.openForRead(WHITEOUTS);
+            try {
+                for (String line : LINES.split(new String(ByteStreams.toByteArray(in), Charsets.UTF_8))) {
+                    whiteouts.add(line);
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        return !isHidden(key) && (delta.exists(key) || inBase(key));
+    }
+
+    @Override
+    public boolean isDirectory(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        if (isHidden(key)) {
+            return false;
+        }
+        if (delta.exists(key)) {
+            return delta.isDirectory(key);
+        }
+        return inBase(key) && base.isDirectory(key);
+    }
+
+    @Override
+    public void list(String path, List<String> contents) throws IOException {
+        final String key = PathUtil.normalize(path);
+        if (!isDirectory(key)) {
+            throw new IOException("Not a directory");
+        }
+        final Set<String> found = Sets.newTreeSet();
+        if (delta.exists(key)) {
+            final ArrayList<String> names = Lists.newArrayList();
+            delta.list(key, names);
+            for (String name : names) {
+                if (!isHidden(PathUtil.child(key, name))) {
+                    found.add(name);
+                }
+            }
+        }
+        if (inBase(key) && base.isDirectory(key)) {
+            final ArrayList<String> names = Lists.newArrayList();
+            base.list(key, names);
+            for (String name : names) {
+                if (!isWhitedOut(PathUtil.child(key, name))) {
+                    found.add(name);
+                }
+            }
+        }
+        contents.addAll(found);
+    }
+
+    @Override
+    public long getSize(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        checkAccess(key);
+        if (delta.exists(key)) {
+            return delta.getSize(key);
+        }
+        if (inBase(key)) {
+            return base.getSize(key);
+        }
+        throw new IOException("No such file");
+    }
+
+    @Override
+    public InputStream openForRead(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        checkAccess(key);
+        if (delta.exists(key)) {
+            return delta.openForRead(key);
+        }
+        if (inBase(key)) {
+            return base.openForRead(key);
+        }
+        throw new IOException("No such file");
+    }
+
+    @Override
+    public void makeDirectory(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        checkAccess(key);
+        delta.makeDirectory(key);
+    }
+
+    @Override
+    public void delete(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        checkAccess(key);
+        if (key.isEmpty()) {
+            throw new IOException("Access denied");
+        }
+        if (delta.exists(key)) {
+            delta.delete(key);
+        }
+        if (inBase(key)) {
+            synchronized (whiteouts) {
+                whiteouts.add(key);
+                saveWhiteouts();
+            }
+        }
+    }
+
+    @Override
+    public OutputStream openForWrite(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        checkAccess(key);
+        return delta.openForWrite(key);
+    }
+
+    @Override
+    public OutputStream openForAppend(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        checkAccess(key);
+        if (!delta.exists(key) && inBase(key) && !base.isDirectory(key)) {
+            copyUp(key);
+        }
+        return delta.openForAppend(key);
+    }
+
+    @Override
+    public long getRemainingSpace() throws IOException {
+        return delta.getRemainingSpace();
+    }
+
+    /**
+     * Closes the delta if it needs closing, the base is left open as it may be shared
+     */
+    @Override
+    public void close() throws IOException {
+        if (delta instanceof Closeable) {
+            ((Closeable) delta).close();
+        }
+    }
+
+    /**
+     * @return the number of base paths currently hidden by a deletion
+     */
+    public int getWhiteoutCount() {
+        synchronized (whiteouts) {
+            return whiteouts.size();
+        }
+    }
+
+    /**
+     * @return how many base files were copied into the delta to be appended to
+     */
+    public long getCopyUpCount() {
+        return copyUpCount.get();
+    }
+
+    private void copyUp(String key) throws IOException {
+        final InputStream in = base.openForRead(key);
+        try {
+            final OutputStream out = delta.openForWrite(key);
+            try {
+                ByteStreams.copy(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        copyUpCount.incrementAndGet();
+    }
+
+    private boolean inBase(String key) throws IOException {
+        return !isWhitedOut(key) && base.exists(key);
+    }
+
+    private boolean isWhitedOut(String key) {
+        synchronized (whiteouts) {
+            if (whiteouts.isEmpty()) {
+                return false;
+            }
+            // a whiteout hides the path itself and everything below it
+            String current = key;
+            while (!current.isEmpty()) {
+                if (whiteouts.contains(current)) {
+                    return true;
+                }
+                current = PathUtil.parent(current);
+            }
+            return false;
+        }
+    }
+
+    private void saveWhiteouts() throws IOException {
+        final OutputStream out = delta.openForWrite(WHITEOUTS);
+        try {
+            out.write(JOINER.join(whiteouts).getBytes(Charsets.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static boolean isHidden(String key) {
+        return key.equals(WHITEOUTS);
+    }
+
+    private static void checkAccess(String key) throws IOException {
+        if (isHidden(key)) {
+            throw new IOException("Access denied");
+        }
+    }
+}
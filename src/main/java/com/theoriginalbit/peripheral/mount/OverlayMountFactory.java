@@ -0,0 +1,102 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.base.Preconditions;
+import com.theoriginalbit.peripheral.api.filesystem.IMountFactory;
+import dan200.computercraft.api.filesystem.IMount;
+import dan200.computercraft.api.filesystem.IWritableMount;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+import net.minecraftforge.common.DimensionManager;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Gives every computer an {@link OverlayMount} over the same read-only base, so each computer starts with the base
+ * contents and only its changes are stored. By default the changes are kept by a {@link WriteBehindMount} in
+ * {@code peripheral-framework/<name>/<computer id>} of the world save.
+ * <p/>
+ * Extend this class with a public no-arg constructor to use it with the Mount annotation, the base is closed with the
+ * factory if it is Closeable so sharing the factory also shares the base.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public abstract class OverlayMountFactory implements IMountFactory, Closeable {
+    private final String location;
+    private final String name;
+    private final IMount base;
+    private final long capacity;
+
+    /**
+     * @param mountLocation the location on the computer to mount to
+     * @param name          the directory name within the world save to store the changes of each computer in
+     * @param base          the read-only contents shared by every computer
+     * @param capacity      the number of bytes each computer may store in its changes
+     */
+    protected OverlayMountFactory(String mountLocation, String name, IMount base, long capacity) {
+        location = Preconditions.checkNotNull(mountLocation);
+        this.name = Preconditions.checkNotNull(name);
+        this.base = Preconditions.checkNotNull(base);
+        this.capacity = capacity;
+    }
+
+    @Override
+    public String getMountLocation() {
+        return location;
+    }
+
+    @Override
+    public IMount createMount(IComputerAccess computer) throws IOException {
+        return new OverlayMount(base, createDelta(computer));
+    }
+
+    @Override
+    public void releaseMount(IComputerAccess computer, IMount mount) {
+        try {
+            ((OverlayMount) mount).close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (base instanceof Closeable) {
+            ((Closeable) base).close();
+        }
+    }
+
+    /**
+     * @param computer the computer the changes are for
+     * @return the writable mount to store the computer's changes in
+     * @throws IOException if the mount couldn't be created
+     */
+    protected IWritableMount createDelta(IComputerAccess computer) throws IOException {
+        return new WriteBehindMount(location, getDeltaDirectory(computer), capacity) {
+        };
+    }
+
+    /**
+     * @param computer the computer the changes are for
+     * @return the directory to store the computer's changes in
+     */
+    protected File getDeltaDirectory(IComputerAccess computer) {
+        final File root = new File(DimensionManager.getCurrentSaveRootDirectory(), "peripheral-framework");
+        return new File(new File(root, name), Integer.toString(computer.getID()));
+    }
+}
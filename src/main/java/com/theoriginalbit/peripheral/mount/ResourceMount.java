@@ -0,0 +1,140 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.io.Files;
+import com.theoriginalbit.peripheral.util.PathUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.zip.ZipFile;
+
+/**
+ * A read-only mount of Lua programs shipped with a mod, either a directory on the classpath or a directory within a
+ * jar. The directory tree is indexed once when the mount is created so every metadata query is a map lookup, and
+ * files up to {@link #CACHE_THRESHOLD} bytes are held in memory and shared between every computer reading them.
+ * <p/>
+ * Extend this class with a public no-arg constructor to use it with the Mount annotation.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public abstract class ResourceMount extends IndexedMount {
+    public static final int CACHE_THRESHOLD = 64 * 1024;
+
+    private final MountIndex index;
+    private final ZipFile zip;
+
+    /**
+     * Mounts a directory on the classpath, which may be within the mod's jar or a plain directory
+     *
+     * @param mountLocation the location on the computer to mount to
+     * @param resourcePath  the absolute classpath path of the directory, e.g. {@code /assets/mymod/lua}
+     * @throws IOException if the directory couldn't be found or read
+     */
+    protected ResourceMount(String mountLocation, String resourcePath) throws IOException {
+        super(mountLocation);
+        final URL url = getClass().getResource(resourcePath);
+        if (url == null) {
+            throw new IOException("Resource directory not found: " + resourcePath);
+        }
+
+        if ("jar".equals(url.getProtocol())) {
+            final JarURLConnection connection = (JarURLConnection) url.openConnection();
+            zip = new ZipFile(toFile(connection.getJarFileURL()));
+            index = MountIndex.ofZip(zip, connection.getEntryName(), CACHE_THRESHOLD);
+        } else {
+            zip = null;
+            index = indexDirectory(toFile(url));
+        }
+    }
+
+    /**
+     * Mounts a directory within a jar or zip file
+     *
+     * @param mountLocation the location on the computer to mount to
+     * @param jar           the jar file
+     * @param prefix        the directory within the jar to mount, or an empty string for the whole jar
+     * @throws IOException if the jar couldn't be read
+     */
+    protected ResourceMount(String mountLocation, File jar, String prefix) throws IOException {
+        super(mountLocation);
+        zip = new ZipFile(jar);
+        index = MountIndex.ofZip(zip, prefix, CACHE_THRESHOLD);
+    }
+
+    @Override
+    MountIndex index() {
+        return index;
+    }
+
+    @Override
+    InputStream open(MountIndex.Node node) throws IOException {
+        // the cached bytes are never handed out, so every computer can safely read the same array
+        if (node.data != null) {
+            return new ByteArrayInputStream(node.data);
+        }
+        return zip != null ? openEntry(zip, node.source) : new FileInputStream(node.source);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (zip != null) {
+            zip.close();
+        }
+    }
+
+    private static MountIndex indexDirectory(File root) throws IOException {
+        if (!root.isDirectory()) {
+            throw new IOException("Not a directory: " + root);
+        }
+        final MountIndex.Builder builder = new MountIndex.Builder();
+        indexDirectory(builder, root, "");
+        return builder.build();
+    }
+
+    private static void indexDirectory(MountIndex.Builder builder, File dir, String path) throws IOException {
+        builder.addDirectory(path);
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException("Unable to list directory: " + dir);
+        }
+        for (File file : files) {
+            final String child = PathUtil.child(path, file.getName());
+            if (file.isDirectory()) {
+                indexDirectory(builder, file, child);
+            } else if (file.length() <= CACHE_THRESHOLD) {
+                final byte[] data = Files.toByteArray(file);
+                builder.addFile(child, data.length, file.getPath(), data);
+            } else {
+                builder.addFile(child, file.length(), file.getPath(), null);
+            }
+        }
+    }
+
+    private static File toFile(URL url) throws IOException {
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid resource location: " + url);
+        }
+    }
+}
@@ -0,0 +1,729 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.theoriginalbit.peripheral.util.Log;
+import com.theoriginalbit.peripheral.util.PathUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A writable mount of a directory on disk that buffers writes in memory and writes them to disk in the background.
+ * <p/>
+ * Closing a stream from {@link #openForWrite(String)} or {@link #openForAppend(String)} only records its content as
+ * pending, repeated writes and appends to the same file are coalesced into a single pending change. Pending changes are
+ * flushed by a background thread {@link #FLUSH_INTERVAL} ms after the first of them, as soon as the mount holds more
+ * than {@link #FLUSH_THRESHOLD} pending bytes, when the mount is closed, or when {@link #flush()} is called. A flush
+ * writes every pending file first and then syncs each of them, and the directories holding them, to disk once. Reads
+ * always see pending changes, including those of a batch that is still being written, and never wait for a flush.
+ * <p/>
+ * Writes are counted against the capacity as they are made, a write that would take the mount over it fails with
+ * "Out of space". A single stream buffers at most {@link #MAX_BUFFERED} bytes.
+ * <p/>
+ * Durability: data is only on disk once the flush after its stream was closed has completed, a crash or kill before
+ * then loses it. Rewritten files are written to a temporary file, synced and renamed over the original, so after a
+ * crash they hold either their old or their new content. That needs a rename that replaces its target; where it
+ * doesn't, such as on Windows, the original is deleted first and a crash in between leaves the file missing, with its
+ * new content only in the hidden {@code .pf-tmp} file beside it. Appends are written in place, so a crash during a
+ * flush can leave part of an append on disk. A change that fails to be written stays pending and is tried again by
+ * the next flush. Data written to a stream that was never closed is never written. Pending changes of mounts still in
+ * use are flushed when the JVM shuts down normally.
+ * <p/>
+ * Extend this class with a public no-arg constructor to use it with the Mount annotation.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public abstract class WriteBehindMount extends AccountedWritableMount {
+    public static final long FLUSH_INTERVAL = 1000;
+    public static final int FLUSH_THRESHOLD = 256 * 1024;
+    public static final int MAX_BUFFERED = 16 * 1024 * 1024;
+    private static final String TEMP_SUFFIX = ".pf-tmp";
+    private static final Method TO_PATH;
+    private static final Method OPEN_CHANNEL;
+    private static final Object READ_OPTIONS;
+
+    static {
+        Method toPath = null;
+        Method open = null;
+        Object options = null;
+        try {
+            final Class<?> option = Class.forName("java.nio.file.OpenOption");
+            options = Array.newInstance(option, 1);
+            Array.set(options, 0, Class.forName("java.nio.file.StandardOpenOption").getField("READ").get(null));
+            toPath = File.class.getMethod("toPath");
+            open = FileChannel.class.getMethod("open", toPath.getReturnType(), options.getClass());
+        } catch (Exception e) {
+            // a Java 6 runtime, directories aren't synced
+            open = null;
+        }
+        TO_PATH = toPath;
+        OPEN_CHANNEL = open;
+        READ_OPTIONS = options;
+    }
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("peripheral-framework-flusher").setDaemon(true).build());
+    private static final Set<WriteBehindMount> LIVE_MOUNTS = Collections.synchronizedSet(Sets.newSetFromMap(new WeakHashMap<WriteBehindMount, Boolean>()));
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread("peripheral-framework-flush-on-exit") {
+            @Override
+            public void run() {
+                final WriteBehindMount[] mounts;
+                synchronized (LIVE_MOUNTS) {
+                    mounts = LIVE_MOUNTS.toArray(new WriteBehindMount[LIVE_MOUNTS.size()]);
+                }
+                for (WriteBehindMount mount : mounts) {
+                    mount.flushQuietly();
+                }
+            }
+        });
+    }
+
+    private final String location;
+    private final File root;
+    // changes not yet part of a flush, and those of the batch being written; both guarded by pending
+    private final LinkedHashMap<String, Pending> pending = Maps.newLinkedHashMap();
+    private final LinkedHashMap<String, Pending> inFlight = Maps.newLinkedHashMap();
+    // held by a flush for the whole batch and by anything that must not run alongside one
+    private final ReentrantLock ioLock = new ReentrantLock();
+    private long pendingBytes;
+    private boolean flushScheduled;
+
+    private final AtomicLong commitCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedBytes = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * @param mountLocation the location on the computer to mount to
+     * @param directory     the directory on disk to store files in
+     * @param capacity      the number of bytes the computer may store
+     */
+    protected WriteBehindMount(String mountLocation, File directory, long capacity) {
+        super(capacity, new File(directory.getParentFile(), directory.getName() + ".usage"));
+        location = mountLocation;
+        root = directory;
+        LIVE_MOUNTS.add(this);
+    }
+
+    @Override
+    public String getMountLocation() {
+        return location;
+    }
+
+    @Override
+    public boolean exists(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        synchronized (pending) {
+            if (pending.containsKey(key) || inFlight.containsKey(key)) {
+                return true;
+            }
+        }
+        return resolve(key).exists();
+    }
+
+    @Override
+    public boolean isDirectory(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        synchronized (pending) {
+            if (pending.containsKey(key) || inFlight.containsKey(key)) {
+                return false;
+            }
+        }
+        return resolve(key).isDirectory();
+    }
+
+    @Override
+    public void list(String path, List<String> contents) throws IOException {
+        final String key = PathUtil.normalize(path);
+        final String[] names = resolve(key).list();
+        if (names == null) {
+            throw new IOException("Not a directory");
+        }
+        final Set<String> found = Sets.newTreeSet();
+        for (String name : names) {
+            if (!name.endsWith(TEMP_SUFFIX)) {
+                found.add(name);
+            }
+        }
+        synchronized (pending) {
+            for (String file : Iterables.concat(pending.keySet(), inFlight.keySet())) {
+                if (PathUtil.parent(file).equals(key)) {
+                    found.add(PathUtil.name(file));
+                }
+            }
+        }
+        contents.addAll(found);
+    }
+
+    @Override
+    public long getSize(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        synchronized (pending) {
+            final long length = currentLength(key);
+            if (length >= 0) {
+                return length;
+            }
+        }
+        if (!resolve(key).isDirectory()) {
+            throw new IOException("No such file");
+        }
+        return 0;
+    }
+
+    @Override
+    public InputStream openForRead(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        final File file = resolve(key);
+        final List<InputStream> parts = Lists.newArrayListWithCapacity(3);
+        synchronized (pending) {
+            final Pending change = pending.get(key);
+            if (change != null && change.replace) {
+                return new ByteArrayInputStream(change.data.toByteArray());
+            }
+
+            // the disk is only read up to where the batch being written, if any, continues it
+            final Pending flying = inFlight.get(key);
+            final long diskLength = flying == null ? Long.MAX_VALUE : flying.replace ? 0 : flying.base;
+            if (diskLength > 0 && file.isFile()) {
+                // opened while holding the lock so a flush replacing the file afterwards doesn't change what is read
+                parts.add(ByteStreams.limit(new FileInputStream(file), Math.min(diskLength, file.length())));
+            } else if (flying == null && change == null) {
+                throw new IOException("No such file");
+            }
+            if (flying != null) {
+                parts.add(new ByteArrayInputStream(flying.data.toByteArray()));
+            }
+            if (change != null) {
+                parts.add(new ByteArrayInputStream(change.data.toByteArray()));
+            }
+        }
+        return parts.size() == 1 ? parts.get(0) : new SequenceInputStream(Collections.enumeration(parts));
+    }
+
+    @Override
+    public void makeDirectory(String path) throws IOException {
+        final File dir = resolve(PathUtil.normalize(path));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Access denied");
+        }
+    }
+
+    @Override
+    public void delete(String path) throws IOException {
+        final String key = PathUtil.normalize(path);
+        // wait for any flush, so nothing is in flight while the files are removed
+        ioLock.lock();
+        try {
+            final File file = resolve(key);
+            long removed = sizeOf(file);
+            synchronized (pending) {
+                final String prefix = key + '/';
+                for (Map.Entry<String, Pending> entry : Maps.newHashMap(pending).entrySet()) {
+                    if (key.isEmpty() || entry.getKey().equals(key) || entry.getKey().startsWith(prefix)) {
+                        final Pending change = entry.getValue();
+                        removed += change.data.size() - (change.replace ? resolve(entry.getKey()).length() : 0);
+                        pendingBytes -= change.data.size();
+                        pending.remove(entry.getKey());
+                    }
+                }
+            }
+            try {
+                deleteRecursively(file);
+            } finally {
+                adjustUsedSpace(-(removed - sizeOf(file)));
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    @Override
+    public OutputStream openForWrite(String path) throws IOException {
+        return open(PathUtil.normalize(path), true);
+    }
+
+    @Override
+    public OutputStream openForAppend(String path) throws IOException {
+        return open(PathUtil.normalize(path), false);
+    }
+
+    /**
+     * Writes every pending change to disk and waits for it to be synced
+     *
+     * @throws IOException if a file couldn't be written, the changes that failed stay pending
+     */
+    public void flush() throws IOException {
+        ioLock.lock();
+        try {
+            final LinkedHashMap<String, Pending> batch;
+            synchronized (pending) {
+                flushScheduled = false;
+                if (pending.isEmpty()) {
+                    return;
+                }
+                for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+                    final Pending change = entry.getValue();
+                    if (!change.replace) {
+                        // the disk file doesn't change until this batch writes it, appends continue from here
+                        change.base = resolve(entry.getKey()).length();
+                    }
+                }
+                inFlight.putAll(pending);
+                batch = Maps.newLinkedHashMap(pending);
+                pending.clear();
+                pendingBytes = 0;
+            }
+
+            final Set<String> failed = Sets.newHashSet();
+            final IOException failure = writeBatch(batch, failed);
+
+            // the batch is on disk now, except what failed which goes back to being pending
+            synchronized (pending) {
+                for (String key : batch.keySet()) {
+                    final Pending flying = inFlight.remove(key);
+                    if (failed.contains(key)) {
+                        restore(key, flying);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the pending changes, the mount can still be used afterwards
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        super.close();
+    }
+
+    /**
+     * @return how many streams have been closed, and so committed a pending change
+     */
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    /**
+     * @return how many of those commits were merged into a change that was already pending for the same file
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return how many batches have been written to disk
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * @return how many bytes have been written to disk
+     */
+    public long getFlushedBytes() {
+        return flushedBytes.get();
+    }
+
+    /**
+     * @return how many times a file failed to be written and its change was kept pending
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    private OutputStream open(String key, boolean replace) throws IOException {
+        final File file = resolve(key);
+        if (file.isDirectory()) {
+            throw new IOException("Cannot write to directory");
+        }
+        // create the parent eagerly so the directory tree is visible before the flush
+        final File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Access denied");
+        }
+        return new BufferedWrite(key, replace);
+    }
+
+    /**
+     * The length of the file including pending and in flight changes, or -1 if it doesn't exist. Callers hold the
+     * pending lock.
+     */
+    private long currentLength(String key) {
+        final Pending change = pending.get(key);
+        if (change != null && change.replace) {
+            return change.data.size();
+        }
+        final long tail = change == null ? 0 : change.data.size();
+        final Pending flying = inFlight.get(key);
+        if (flying != null) {
+            return (flying.replace ? 0 : flying.base) + flying.data.size() + tail;
+        }
+        final File file = resolve(key);
+        if (file.isFile()) {
+            return file.length() + tail;
+        }
+        return change == null ? -1 : tail;
+    }
+
+    /**
+     * @param size the number of bytes the stream will have written
+     * @return the change in used space once the stream is committed. Callers hold the pending lock.
+     */
+    private long growth(String key, boolean replace, long size) {
+        return replace ? size - Math.max(0, currentLength(key)) : size;
+    }
+
+    private void ensureSpace(String key, boolean replace, long size) throws IOException {
+        if (size > MAX_BUFFERED) {
+            throw new IOException("Out of space");
+        }
+        synchronized (pending) {
+            final long growth = growth(key, replace, size);
+            if (growth > 0 && growth > getRemainingSpace()) {
+                throw new IOException("Out of space");
+            }
+        }
+    }
+
+    private void commit(String key, boolean replace, ByteArrayOutputStream data) throws IOException {
+        final boolean flushNow;
+        synchronized (pending) {
+            // checked again as other streams may have used the space since this one was written to
+            final long growth = growth(key, replace, data.size());
+            if (growth > 0 && growth > getRemainingSpace()) {
+                throw new IOException("Out of space");
+            }
+            adjustUsedSpace(growth);
+
+            final Pending existing = pending.get(key);
+            if (existing != null && !replace) {
+                // appending to a pending change, whatever it was, just extends it
+                data.writeTo(existing.data);
+                coalescedCount.incrementAndGet();
+            } else {
+                if (existing != null) {
+                    // a rewrite supersedes whatever was pending
+                    pendingBytes -= existing.data.size();
+                    coalescedCount.incrementAndGet();
+                }
+                final Pending change = new Pending(replace, new ByteArrayOutputStream(data.size()));
+                data.writeTo(change.data);
+                pending.put(key, change);
+            }
+            pendingBytes += data.size();
+            commitCount.incrementAndGet();
+
+            flushNow = pendingBytes > FLUSH_THRESHOLD;
+            if (!flushNow && !flushScheduled) {
+                flushScheduled = true;
+                FLUSHER.schedule(new FlushTask(), FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (flushNow) {
+            FLUSHER.execute(new FlushTask());
+        }
+    }
+
+    /**
+     * Puts a change that failed to be written back in front of anything committed since. Callers hold the pending
+     * lock.
+     */
+    private void restore(String key, Pending failed) {
+        final Pending newer = pending.get(key);
+        if (newer != null && newer.replace) {
+            // a rewrite since supersedes the failed change
+            return;
+        }
+        if (newer != null) {
+            try {
+                newer.data.writeTo(failed.data);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            pendingBytes -= newer.data.size();
+        }
+        pending.put(key, failed);
+        pendingBytes += failed.data.size();
+    }
+
+    /**
+     * Writes the whole batch before syncing any of it, so the disk is synced once per file rather than between files.
+     * Rewritten files are synced before they're renamed over the original, then the directories holding the batch
+     * are synced so new names survive a crash too.
+     *
+     * @param failed filled with the keys of the files that couldn't be written
+     * @return the last failure, or null if everything was written
+     */
+    private IOException writeBatch(Map<String, Pending> batch, Set<String> failed) {
+        IOException failure = null;
+        final Map<String, File> written = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Pending> entry : batch.entrySet()) {
+            final Pending change = entry.getValue();
+            final File file = resolve(entry.getKey());
+            final File target = change.replace ? new File(file.getParentFile(), file.getName() + TEMP_SUFFIX) : file;
+            try {
+                write(target, change.data, !change.replace);
+                written.put(entry.getKey(), target);
+            } catch (IOException e) {
+                failure = fail(entry.getKey(), change, file, failed, e);
+            }
+        }
+
+        final Set<File> directories = Sets.newLinkedHashSet();
+        long flushed = 0;
+        for (Map.Entry<String, File> entry : written.entrySet()) {
+            final Pending change = batch.get(entry.getKey());
+            final File file = resolve(entry.getKey());
+            try {
+                sync(entry.getValue());
+                if (change.replace && !entry.getValue().renameTo(file)
+                        && !(file.delete() && entry.getValue().renameTo(file))) {
+                    throw new IOException("Unable to replace " + file);
+                }
+                directories.add(file.getParentFile());
+                flushed += change.data.size();
+            } catch (IOException e) {
+                failure = fail(entry.getKey(), change, file, failed, e);
+            }
+        }
+        for (File directory : directories) {
+            syncDirectory(directory);
+        }
+
+        flushCount.incrementAndGet();
+        flushedBytes.addAndGet(flushed);
+        return failure;
+    }
+
+    private IOException fail(String key, Pending change, File file, Set<String> failed, IOException e) {
+        if (!change.replace) {
+            // cut off whatever part of the append made it, it is written again in full next time
+            truncate(file, change.base);
+        }
+        Log.error("Failed to write %s: %s", file, e.getMessage());
+        failedCount.incrementAndGet();
+        failed.add(key);
+        return e;
+    }
+
+    @Override
+    protected long scanUsedSpace() throws IOException {
+        // hold the io lock so no flush moves pending changes to disk while they're being counted
+        ioLock.lock();
+        try {
+            synchronized (pending) {
+                // nothing reports a change while both locks are held, so this is the scan's snapshot
+                markScanSnapshot();
+                long used = sizeOf(root);
+                for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+                    final Pending change = entry.getValue();
+                    used += change.data.size() - (change.replace ? resolve(entry.getKey()).length() : 0);
+                }
+                return used;
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            Log.error("Failed to flush mount %s: %s", location, e.getMessage());
+        }
+    }
+
+    private File resolve(String key) {
+        return new File(root, key);
+    }
+
+    private static void write(File file, ByteArrayOutputStream data, boolean append) throws IOException {
+        final File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        final FileOutputStream stream = new FileOutputStream(file, append);
+        try {
+            data.writeTo(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static void sync(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.getFD().sync();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Syncs the directory's entries where the platform allows it. Directories can only be opened through the Java 7
+     * file API, which is looked up reflectively; on older runtimes and on Windows, which can't open a directory, the
+     * renames are left to the file system.
+     */
+    private static void syncDirectory(File directory) {
+        if (OPEN_CHANNEL == null) {
+            return;
+        }
+        try {
+            final Object path = TO_PATH.invoke(directory);
+            final FileChannel channel = (FileChannel) OPEN_CHANNEL.invoke(null, path, READ_OPTIONS);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (Exception e) {
+            // not supported here, nothing more can be done
+        }
+    }
+
+    private static void truncate(File file, long length) {
+        if (!file.isFile() || file.length() <= length) {
+            return;
+        }
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            Log.error("Unable to undo the partial append to %s: %s", file, e.getMessage());
+        }
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Access denied");
+        }
+    }
+
+    private static long sizeOf(File file) {
+        final File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long size = 0;
+        for (File child : children) {
+            size += sizeOf(child);
+        }
+        return size;
+    }
+
+    private static final class Pending {
+        private final boolean replace;
+        private final ByteArrayOutputStream data;
+        // for an append in flight, the length of the disk file it continues
+        private long base;
+
+        private Pending(boolean replace, ByteArrayOutputStream data) {
+            this.replace = replace;
+            this.data = data;
+        }
+    }
+
+    private final class FlushTask implements Runnable {
+        @Override
+        public void run() {
+            flushQuietly();
+        }
+    }
+
+    private final class BufferedWrite extends OutputStream {
+        private final String key;
+        private final boolean replace;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private boolean closed;
+
+        private BufferedWrite(String key, boolean replace) {
+            this.key = key;
+            this.replace = replace;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            ensureSpace(key, replace, buffer.size() + len);
+            buffer.write(b, off, len);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                commit(key, replace, buffer);
+            }
+        }
+    }
+}
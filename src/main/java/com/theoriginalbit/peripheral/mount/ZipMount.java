@@ -0,0 +1,150 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.ZipFile;
+
+/**
+ * A read-only mount of a zip or jar archive, such as the mod's own jar, served without extracting it. The central
+ * directory is read once into an index that answers every metadata query, entries are read through a single
+ * {@link ZipFile} shared by every computer, and decompressed entries up to {@link #CACHEABLE_SIZE} bytes are kept in a
+ * least recently used cache bounded by their total size.
+ * <p/>
+ * Extend this class with a public no-arg constructor to use it with the Mount annotation.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public abstract class ZipMount extends IndexedMount {
+    public static final int CACHEABLE_SIZE = 64 * 1024;
+    public static final long DEFAULT_CACHE_SIZE = 4 * 1024 * 1024;
+
+    private final ZipFile zip;
+    private final MountIndex index;
+    private final Cache<String, byte[]> cache;
+
+    /**
+     * Mounts a directory within the jar that the supplied class was loaded from
+     *
+     * @param mountLocation the location on the computer to mount to
+     * @param modClass      a class from the jar, usually the mod class
+     * @param prefix        the directory within the jar to mount, or an empty string for the whole jar
+     * @throws IOException if the class wasn't loaded from a jar or the jar couldn't be read
+     */
+    protected ZipMount(String mountLocation, Class<?> modClass, String prefix) throws IOException {
+        this(mountLocation, jarOf(modClass), prefix, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param mountLocation the location on the computer to mount to
+     * @param archive       the zip or jar file
+     * @param prefix        the directory within the archive to mount, or an empty string for the whole archive
+     * @throws IOException if the archive couldn't be read
+     */
+    protected ZipMount(String mountLocation, File archive, String prefix) throws IOException {
+        this(mountLocation, archive, prefix, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param mountLocation the location on the computer to mount to
+     * @param archive       the zip or jar file
+     * @param prefix        the directory within the archive to mount, or an empty string for the whole archive
+     * @param cacheSize     the most bytes of decompressed entries to keep in memory
+     * @throws IOException if the archive couldn't be read
+     */
+    protected ZipMount(String mountLocation, File archive, String prefix, long cacheSize) throws IOException {
+        super(mountLocation);
+        zip = new ZipFile(archive);
+        index = MountIndex.ofZip(zip, prefix, -1);
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(cacheSize)
+                .weigher(new Weigher<String, byte[]>() {
+                    @Override
+                    public int weigh(String key, byte[] value) {
+                        return value.length;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    MountIndex index() {
+        return index;
+    }
+
+    @Override
+    InputStream open(MountIndex.Node node) throws IOException {
+        if (node.size < 0 || node.size > CACHEABLE_SIZE) {
+            return openEntry(zip, node.source);
+        }
+
+        final String name = node.source;
+        try {
+            final byte[] data = cache.get(name, new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    final InputStream stream = openEntry(zip, name);
+                    try {
+                        return ByteStreams.toByteArray(stream);
+                    } finally {
+                        stream.close();
+                    }
+                }
+            });
+            return new ByteArrayInputStream(data);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * @return the hit, miss and eviction counts of the decompressed entry cache
+     */
+    public CacheStats getCacheStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        cache.invalidateAll();
+        zip.close();
+    }
+
+    private static File jarOf(Class<?> clazz) throws IOException {
+        try {
+            final File jar = new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (!jar.isFile()) {
+                throw new IOException(clazz.getName() + " was not loaded from a jar");
+            }
+            return jar;
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid location for " + clazz.getName());
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.task;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.theoriginalbit.peripheral.util.Log;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Interrupts the thread of any function call that runs past its deadline, so a misbehaving method can't hold a
+ * computer thread forever. Each time it happens the method is logged, along with a sample of where it was stuck the
+ * first time and again each time its count of timeouts doubles.
+ * <p/>
+ * Only methods with a {@link com.theoriginalbit.peripheral.api.lua.Timeout} are watched unless a default deadline is
+ * set with {@link #setDefaultDeadline(long)}, so existing functions keep running for as long as they always have.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class CallWatchdog {
+    public static final long DEFAULT_DEADLINE = 0;
+    private static final long CHECK_INTERVAL = 50;
+
+    private final Set<Call> calls = Sets.newSetFromMap(Maps.<Call, Boolean>newConcurrentMap());
+    private final ConcurrentMap<String, AtomicLong> offenders = Maps.newConcurrentMap();
+    private final ThreadLocal<Call> current = new ThreadLocal<Call>();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private volatile long defaultDeadline = DEFAULT_DEADLINE;
+    private Thread thread;
+
+    /**
+     * Starts watching a call made from the current thread, it must be finished from the same thread
+     *
+     * @param name     what to report the call as
+     * @param deadline how long the call may run for in nanoseconds
+     */
+    public Call start(String name, long deadline) {
+        Preconditions.checkArgument(deadline > 0, "deadline must be positive");
+        ensureRunning();
+        final Call call = new Call(name, deadline, current.get());
+        current.set(call);
+        calls.add(call);
+        return call;
+    }
+
+    /**
+     * Stops the deadline of the current thread's call counting down, such as while the computer is yielded
+     */
+    public void suspendCurrent() {
+        final Call call = current.get();
+        if (call != null) {
+            call.setSuspended(true);
+        }
+    }
+
+    /**
+     * Restarts the deadline of the current thread's call from now
+     */
+    public void resumeCurrent() {
+        final Call call = current.get();
+        if (call != null) {
+            call.setSuspended(false);
+        }
+    }
+
+    /**
+     * @param nanos the deadline of calls to methods without a Timeout, or 0 to only watch methods with one
+     */
+    public void setDefaultDeadline(long nanos) {
+        Preconditions.checkArgument(nanos >= 0, "deadline cannot be negative");
+        defaultDeadline = nanos;
+    }
+
+    public long getDefaultDeadline() {
+        return defaultDeadline;
+    }
+
+    /**
+     * @return how many calls have been interrupted
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * @return how many times each method has been interrupted
+     */
+    public Map<String, Long> getOffenders() {
+        final ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+        for (Map.Entry<String, AtomicLong> entry : offenders.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue().get());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Starts the checking thread, or starts it again if it died, so no deadline goes unenforced
+     */
+    private synchronized void ensureRunning() {
+        if (thread != null && thread.isAlive()) {
+            return;
+        }
+        if (thread != null) {
+            Log.warn("The call watchdog stopped, restarting it");
+        }
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(CHECK_INTERVAL);
+                    } catch (InterruptedException e) {
+                        // nothing is meant to stop the watchdog, carry on checking
+                    }
+                    try {
+                        check();
+                    } catch (RuntimeException e) {
+                        Log.error("The call watchdog failed to check the running calls: %s", e);
+                    }
+                }
+            }
+        }, "PeripheralFramework-Watchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void check() {
+        final long now = System.nanoTime();
+        for (Call call : calls) {
+            if (call.expire(now)) {
+                calls.remove(call);
+                report(call);
+            }
+        }
+    }
+
+    private void report(Call call) {
+        timeoutCount.incrementAndGet();
+        AtomicLong count = offenders.get(call.name);
+        if (count == null) {
+            final AtomicLong created = new AtomicLong();
+            count = offenders.putIfAbsent(call.name, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        final long times = count.incrementAndGet();
+        final long ms = TimeUnit.NANOSECONDS.toMillis(call.deadline);
+        if ((times & (times - 1)) != 0) {
+            Log.warn("%s ran past its %d ms deadline and was interrupted (%d times)", call.name, ms, times);
+            return;
+        }
+        final StringBuilder trace = new StringBuilder();
+        for (StackTraceElement element : call.sample) {
+            trace.append("\n\tat ").append(element);
+        }
+        Log.warn("%s ran past its %d ms deadline and was interrupted (%d times), it was at:%s", call.name, ms, times, trace);
+    }
+
+    /**
+     * A call being watched
+     */
+    public final class Call {
+        private final Thread owner = Thread.currentThread();
+        private final String name;
+        private final long deadline;
+        private final Call previous;
+        private long expiry;
+        private boolean suspended;
+        private boolean finished;
+        private boolean timedOut;
+        private StackTraceElement[] sample;
+
+        private Call(String name, long deadline, Call previous) {
+            this.name = name;
+            this.deadline = deadline;
+            this.previous = previous;
+            expiry = System.nanoTime() + deadline;
+        }
+
+        /**
+         * Stops watching the call and clears the interrupt if it timed out
+         *
+         * @return true if the call ran past its deadline
+         */
+        public boolean finish() {
+            synchronized (this) {
+                if (finished) {
+                    return timedOut;
+                }
+                finished = true;
+            }
+            calls.remove(this);
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+            if (timedOut) {
+                Thread.interrupted();
+            }
+            return timedOut;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        private synchronized void setSuspended(boolean suspended) {
+            this.suspended = suspended;
+            expiry = System.nanoTime() + deadline;
+        }
+
+        private synchronized boolean expire(long now) {
+            if (finished || suspended || timedOut || now - expiry < 0) {
+                return false;
+            }
+            timedOut = true;
+            sample = owner.getStackTrace();
+            owner.interrupt();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.task;
+
+import com.google.common.util.concurrent.JdkFutureAdapters;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dan200.computercraft.api.lua.ILuaContext;
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Waits for futures returned by functions. The computer yields until a {@code task_complete} event is queued for the
+ * future, either when it completes or when the timeout passes, so no computer thread is held while it waits.
+ * <p/>
+ * Futures that aren't a {@link ListenableFuture} are watched from a pool thread until they complete.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class FutureTasks {
+    private static final Executor SAME_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("PeripheralFramework-Timeout-%d").setDaemon(true).build());
+    private static final AtomicLong TIMED_OUT_COUNT = new AtomicLong();
+    private static final AtomicLong CANCELLED_COUNT = new AtomicLong();
+
+    private FutureTasks() {
+        // no instances
+    }
+
+    /**
+     * Waits from the computer's thread for the future to complete
+     *
+     * @param timeout how long to wait in nanoseconds, or 0 to wait until it completes
+     * @return the value of the future
+     * @throws LuaException if the future failed or was cancelled, the timeout passed, or the computer was terminated
+     *                      while waiting
+     */
+    public static Object await(final IComputerAccess computer, ILuaContext context, Future<?> future, long timeout)
+            throws LuaException, InterruptedException {
+        if (!future.isDone()) {
+            final long id = TaskEvents.nextId();
+            final Runnable notify = new Runnable() {
+                @Override
+                public void run() {
+                    TaskEvents.queue(computer, new Object[]{id, true});
+                }
+            };
+            final ListenableFuture<?> listenable = future instanceof ListenableFuture
+                    ? (ListenableFuture<?>) future : JdkFutureAdapters.listenInPoolThread(future);
+            listenable.addListener(notify, SAME_THREAD);
+            final ScheduledFuture<?> timer = timeout > 0 ? TIMER.schedule(notify, timeout, TimeUnit.NANOSECONDS) : null;
+            try {
+                TaskEvents.await(context, id);
+            } catch (LuaException e) {
+                cancel(future);
+                throw e;
+            } catch (InterruptedException e) {
+                cancel(future);
+                throw e;
+            } finally {
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+            }
+            if (!future.isDone()) {
+                TIMED_OUT_COUNT.incrementAndGet();
+                cancel(future);
+                throw new LuaException("timed out");
+            }
+        }
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            String message;
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            while (true) {
+                if (!((message = cause.getMessage()) == null && (cause = cause.getCause()) != null)) break;
+            }
+            throw new LuaException(message);
+        } catch (CancellationException e) {
+            throw new LuaException("cancelled");
+        }
+    }
+
+    /**
+     * @return how many futures were cancelled as their timeout passed
+     */
+    public static long getTimedOutCount() {
+        return TIMED_OUT_COUNT.get();
+    }
+
+    /**
+     * @return how many futures were cancelled because the computer stopped waiting, including timeouts
+     */
+    public static long getCancelledCount() {
+        return CANCELLED_COUNT.get();
+    }
+
+    private static void cancel(Future<?> future) {
+        if (future.cancel(true)) {
+            CANCELLED_COUNT.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.task;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Queues;
+import cpw.mods.fml.common.eventhandler.SubscribeEvent;
+import cpw.mods.fml.common.gameevent.TickEvent;
+import dan200.computercraft.api.lua.ILuaContext;
+import dan200.computercraft.api.lua.ILuaTask;
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+import net.minecraftforge.event.world.WorldEvent;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the main thread tasks of every framework peripheral in one batch at the end of the server tick, instead of each
+ * being queued with ComputerCraft on its own. A batch stops once it has used the per-tick budget and what is left runs
+ * first on the next tick, so tasks run in the order they were submitted and a burst is spread over several ticks.
+ * <p/>
+ * Completion is reported with a {@code task_complete} event, see {@link TaskEvents}.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class MainThreadExecutor {
+    public static final long DEFAULT_BUDGET = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final ArrayDeque<Task> queue = Queues.newArrayDeque();
+    private final AtomicLong executedCount = new AtomicLong();
+    private final AtomicLong carriedOverCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private volatile long budget = DEFAULT_BUDGET;
+
+    /**
+     * Queues the task for the end of the tick
+     *
+     * @param computer the computer to send the {@code task_complete} event to
+     * @param task     the task to run on the server thread
+     * @return the id of the task
+     */
+    public long submit(IComputerAccess computer, ILuaTask task) {
+        final Task queued = new Task(computer, TaskEvents.nextId(), task);
+        synchronized (queue) {
+            queue.add(queued);
+        }
+        return queued.id;
+    }
+
+    /**
+     * Queues the task for the end of the tick and waits for it from the computer's thread
+     *
+     * @return the results of the task
+     * @throws LuaException if the task failed, or the computer was terminated while waiting
+     */
+    public Object[] execute(IComputerAccess computer, ILuaContext context, ILuaTask task) throws LuaException, InterruptedException {
+        return TaskEvents.await(context, submit(computer, task));
+    }
+
+    /**
+     * @param nanos how long each tick's batch may run for, at least one task runs every tick
+     */
+    public void setBudget(long nanos) {
+        Preconditions.checkArgument(nanos > 0, "budget must be positive");
+        budget = nanos;
+    }
+
+    /**
+     * Runs queued tasks until the budget is used up
+     */
+    public void runBatch() {
+        final long deadline = System.nanoTime() + budget;
+        boolean ran = false;
+        while (true) {
+            final Task task;
+            synchronized (queue) {
+                if (queue.isEmpty()) {
+                    break;
+                }
+                if (ran && System.nanoTime() >= deadline) {
+                    carriedOverCount.addAndGet(queue.size());
+                    break;
+                }
+                task = queue.poll();
+            }
+            task.run();
+            executedCount.incrementAndGet();
+            ran = true;
+        }
+        if (ran) {
+            batchCount.incrementAndGet();
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    public long getExecutedCount() {
+        return executedCount.get();
+    }
+
+    /**
+     * @return how many times a task had to wait for a later tick as the budget ran out
+     */
+    public long getCarriedOverCount() {
+        return carriedOverCount.get();
+    }
+
+    /**
+     * @return how many ticks ran at least one task
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    @SubscribeEvent
+    public void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            runBatch();
+        }
+    }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        if (!event.world.isRemote && event.world.provider.dimensionId == 0) {
+            synchronized (queue) {
+                queue.clear();
+            }
+        }
+    }
+
+    private static final class Task {
+        private final IComputerAccess computer;
+        private final long id;
+        private final ILuaTask task;
+
+        private Task(IComputerAccess computer, long id, ILuaTask task) {
+            this.computer = computer;
+            this.id = id;
+            this.task = task;
+        }
+
+        private void run() {
+            TaskEvents.run(computer, id, task);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.task;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import dan200.computercraft.api.lua.ILuaContext;
+import dan200.computercraft.api.lua.ILuaTask;
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs Offload functions on a fixed number of worker threads. Only a limited number of calls may wait for a thread,
+ * calls over that fail straight away rather than pile up.
+ * <p/>
+ * Completion is reported with a {@code task_complete} event, see {@link TaskEvents}.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class OffloadExecutor {
+    public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    public static final int DEFAULT_QUEUE = 256;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public OffloadExecutor(int threads, int queueSize) {
+        Preconditions.checkArgument(threads > 0, "threads must be positive");
+        Preconditions.checkArgument(queueSize > 0, "queueSize must be positive");
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("PeripheralFramework-Offload-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the task on a worker thread
+     *
+     * @param computer the computer to send the {@code task_complete} event to
+     * @return the id of the task
+     * @throws LuaException if too many tasks are already waiting
+     */
+    public long submit(final IComputerAccess computer, final ILuaTask task) throws LuaException {
+        final long id = TaskEvents.nextId();
+        submittedCount.incrementAndGet();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    TaskEvents.run(computer, id, task);
+                    completedCount.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            submittedCount.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            throw new LuaException("peripheral is busy, try again later");
+        }
+        return id;
+    }
+
+    /**
+     * Queues the task on a worker thread and waits for it from the computer's thread
+     *
+     * @return the results of the task
+     * @throws LuaException if the task failed or was rejected, or the computer was terminated while waiting
+     */
+    public Object[] execute(IComputerAccess computer, ILuaContext context, ILuaTask task) throws LuaException, InterruptedException {
+        return TaskEvents.await(context, submit(computer, task));
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * @return how many tasks failed because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return how many worker threads are running a task
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+}
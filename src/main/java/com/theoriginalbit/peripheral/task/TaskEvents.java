@@ -0,0 +1,99 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.task;
+
+import com.theoriginalbit.peripheral.PeripheralFramework;
+import dan200.computercraft.api.lua.ILuaContext;
+import dan200.computercraft.api.lua.ILuaTask;
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports tasks finishing the way ComputerCraft does: a {@code task_complete} event with the task id, whether it
+ * succeeded and then the results or the error message. The framework's ids are negative so they never clash with
+ * ComputerCraft's own.
+ * <p/>
+ * The events go through the framework's event dispatcher, which never sheds them: a lost {@code task_complete} would
+ * leave its caller waiting forever.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class TaskEvents {
+    public static final String TASK_COMPLETE = "task_complete";
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private TaskEvents() {
+        // no instances
+    }
+
+    /**
+     * @return an id not used by any other framework task
+     */
+    public static long nextId() {
+        return IDS.decrementAndGet();
+    }
+
+    /**
+     * Runs the task and queues its {@code task_complete} event on the computer
+     */
+    public static void run(IComputerAccess computer, long id, ILuaTask task) {
+        Object[] event;
+        try {
+            final Object[] results = task.execute();
+            final int count = results == null ? 0 : results.length;
+            event = new Object[count + 2];
+            event[0] = id;
+            event[1] = true;
+            if (count > 0) {
+                System.arraycopy(results, 0, event, 2, count);
+            }
+        } catch (LuaException e) {
+            event = new Object[]{id, false, e.getMessage()};
+        } catch (Throwable t) {
+            event = new Object[]{id, false, "Java Exception Thrown: " + t.toString()};
+        }
+        queue(computer, event);
+    }
+
+    static void queue(IComputerAccess computer, Object[] event) {
+        // the results are already Lua values, the dispatcher skips computers that detached while the task was running
+        PeripheralFramework.getEventDispatcher().queueConverted(computer, TASK_COMPLETE, event);
+    }
+
+    /**
+     * Waits from the computer's thread for the {@code task_complete} event of the task, other events are discarded
+     *
+     * @return the results of the task
+     * @throws LuaException if the task failed, or the computer was terminated while waiting
+     */
+    public static Object[] await(ILuaContext context, long id) throws LuaException, InterruptedException {
+        while (true) {
+            final Object[] event = context.pullEvent(TASK_COMPLETE);
+            if (event.length >= 3 && event[1] instanceof Number && event[2] instanceof Boolean
+                    && ((Number) event[1]).longValue() == id) {
+                if ((Boolean) event[2]) {
+                    final Object[] results = new Object[event.length - 3];
+                    System.arraycopy(event, 3, results, 0, results.length);
+                    return results;
+                }
+                throw new LuaException(event.length > 3 && event[3] != null ? event[3].toString() : "task failed");
+            }
+        }
+    }
+}
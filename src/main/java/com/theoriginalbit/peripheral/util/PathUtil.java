@@ -0,0 +1,77 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.util;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+import java.util.LinkedList;
+
+/**
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class PathUtil {
+    private static final Splitter SPLITTER = Splitter.on('/').omitEmptyStrings();
+    private static final Joiner JOINER = Joiner.on('/');
+
+    /**
+     * Normalises a mount path to the form used as a key: forward slashes, no leading or trailing slash, no empty,
+     * {@code .} or {@code ..} components. The root of a mount is the empty string.
+     *
+     * @param path the path as supplied by ComputerCraft or a peripheral
+     * @return the normalised path
+     */
+    public static String normalize(String path) {
+        final LinkedList<String> parts = Lists.newLinkedList();
+        for (String part : SPLITTER.split(path.replace('\\', '/'))) {
+            if (part.equals("..")) {
+                if (!parts.isEmpty()) {
+                    parts.removeLast();
+                }
+            } else if (!part.equals(".")) {
+                parts.add(part);
+            }
+        }
+        return JOINER.join(parts);
+    }
+
+    /**
+     * @param path a normalised path
+     * @return the normalised path of the parent directory, the root is its own parent
+     */
+    public static String parent(String path) {
+        final int idx = path.lastIndexOf('/');
+        return idx < 0 ? "" : path.substring(0, idx);
+    }
+
+    /**
+     * @param path a normalised path
+     * @return the last component of the path
+     */
+    public static String name(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @param parent a normalised directory path
+     * @param name   the name of an entry within the directory
+     * @return the normalised path of the entry
+     */
+    public static String child(String parent, String name) {
+        return parent.isEmpty() ? name : parent + '/' + name;
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.wrapper;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.theoriginalbit.peripheral.util.Log;
+import com.theoriginalbit.peripheral.util.Validation;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the {@link PeripheralModel}s of many peripheral classes at once, spread across the available cores, so that
+ * the reflection cost is paid while the game loads instead of on the first call from Lua.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class ModelWarmUp {
+    /**
+     * Builds the models of the supplied classes, classes that aren't enabled peripherals are skipped
+     *
+     * @param classes the candidate peripheral classes
+     * @return the number of models that were built
+     */
+    public static int warmUp(Collection<Class<?>> classes) {
+        final long start = System.nanoTime();
+
+        final List<Callable<Class<?>>> tasks = Lists.newArrayList();
+        for (final Class<?> clazz : classes) {
+            if (Validation.isEnabled(clazz)) {
+                tasks.add(new Callable<Class<?>>() {
+                    @Override
+                    public Class<?> call() throws Exception {
+                        PeripheralModel.of(clazz);
+                        return clazz;
+                    }
+                });
+            }
+        }
+
+        if (tasks.isEmpty()) {
+            return 0;
+        }
+
+        final int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("peripheral-framework-warmup-%d")
+                .setDaemon(true)
+                .build());
+
+        int built = 0;
+        try {
+            for (Future<Class<?>> result : executor.invokeAll(tasks)) {
+                try {
+                    result.get();
+                    ++built;
+                } catch (ExecutionException e) {
+                    // the same problem will be reported again when the peripheral is first wrapped
+                    Log.warn("Failed to build the peripheral model: %s", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Log.info("Built %d of %d peripheral models in %d ms on %d thread(s)", built, tasks.size(), elapsed, threads);
+        return built;
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.wrapper;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.theoriginalbit.peripheral.api.event.Attach;
+import com.theoriginalbit.peripheral.api.event.ComputerList;
+import com.theoriginalbit.peripheral.api.event.Detach;
+import com.theoriginalbit.peripheral.api.event.Mount;
+import com.theoriginalbit.peripheral.api.filesystem.IMount;
+import com.theoriginalbit.peripheral.api.filesystem.IMountFactory;
+import com.theoriginalbit.peripheral.api.lua.Alias;
+import com.theoriginalbit.peripheral.api.lua.Function;
+import com.theoriginalbit.peripheral.api.peripheral.Peripheral;
+import com.theoriginalbit.peripheral.api.util.AttachedComputers;
+import com.theoriginalbit.peripheral.util.Validation;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Everything the framework learns about a peripheral class through reflection. A model is built once per class and
+ * shared between every wrapper of that class, the wrappers only hold per-instance state.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public final class PeripheralModel {
+    private static final ConcurrentMap<Class<?>, PeripheralModel> MODELS = Maps.newConcurrentMap();
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends IMount>[] NO_MOUNTS = (Class<? extends IMount>[]) new Class<?>[0];
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends IMountFactory>[] NO_MOUNT_FACTORIES =
+            (Class<? extends IMountFactory>[]) new Class<?>[0];
+
+    private final String type;
+    private final boolean lazy;
+    private final String[] methodNames;
+    private final WrapperMethod[] methods;
+    private final Method methodAttach;
+    private final Method methodDetach;
+    private final Field[] computerListFields;
+    private final Class<? extends IMount>[] mountClasses;
+    private final Class<? extends IMountFactory>[] mountFactoryClasses;
+    private final boolean mountShared;
+    private final String mountKey;
+    private final boolean mountCached;
+
+    @SuppressWarnings("unchecked")
+    private PeripheralModel(Class<?> peripheralClass) {
+        final Peripheral peripheralLua = peripheralClass.getAnnotation(Peripheral.class);
+        Preconditions.checkArgument(peripheralLua != null, "Peripheral classes must have the Peripheral annotation present");
+
+        // validate the peripheral type
+        final String pname = peripheralLua.value().trim();
+        Preconditions.checkArgument(!pname.isEmpty(), "Peripheral name cannot be an empty string");
+
+        final LinkedHashMap<String, WrapperMethod> wrapped = Maps.newLinkedHashMap();
+        Method attach = null, detach = null;
+        for (Method m : peripheralClass.getMethods()) {
+            if (Validation.isEnabled(m)) {
+                wrapMethod(wrapped, m);
+            } else if (m.isAnnotationPresent(Alias.class)) {
+                throw new RuntimeException("Alias annotations should only occur on LuaFunction annotated methods");
+            }
+            if (m.isAnnotationPresent(Attach.class)) {
+                attach = m;
+            }
+            if (m.isAnnotationPresent(Detach.class)) {
+                detach = m;
+            }
+        }
+
+        // find the @ComputerList fields that each instance will have its computer list assigned to
+        final ArrayList<Field> fields = Lists.newArrayList();
+        for (Field f : peripheralClass.getDeclaredFields()) {
+            if (f.isAnnotationPresent(ComputerList.class)) {
+                Preconditions.checkArgument(f.getType().isAssignableFrom(AttachedComputers.class) || f.getType() == ArrayList.class,
+                        "ComputerList field %s must be able to hold an AttachedComputers, or be an ArrayList", f.getName());
+                f.setAccessible(true);
+                fields.add(f);
+            }
+        }
+
+        type = pname;
+        lazy = peripheralLua.lazy();
+        methodAttach = checkEventMethod(attach, "@Computers.Attach");
+        methodDetach = checkEventMethod(detach, "@Computers.Detach");
+        computerListFields = fields.toArray(new Field[fields.size()]);
+        final Mount annotationMount = peripheralClass.getAnnotation(Mount.class);
+        mountClasses = annotationMount != null ? annotationMount.value() : NO_MOUNTS;
+        mountFactoryClasses = annotationMount != null ? annotationMount.factories() : NO_MOUNT_FACTORIES;
+        mountShared = annotationMount != null && annotationMount.shared();
+        mountKey = annotationMount != null ? annotationMount.key() : "";
+        mountCached = annotationMount != null && annotationMount.cached();
+
+        final Set<String> keys = wrapped.keySet();
+        final Collection<WrapperMethod> values = wrapped.values();
+        methodNames = keys.toArray(new String[keys.size()]);
+        methods = values.toArray(new WrapperMethod[values.size()]);
+    }
+
+    /**
+     * Gets the shared model for the supplied peripheral class, building it if this is the first time it was asked for
+     *
+     * @param peripheralClass the class annotated with {@link Peripheral}
+     * @return the model of the class
+     */
+    public static PeripheralModel of(Class<?> peripheralClass) {
+        PeripheralModel model = MODELS.get(peripheralClass);
+        if (model == null) {
+            final PeripheralModel built = new PeripheralModel(peripheralClass);
+            model = MODELS.putIfAbsent(peripheralClass, built);
+            if (model == null) {
+                model = built;
+            }
+        }
+        return model;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public String[] getMethodNames() {
+        return methodNames;
+    }
+
+    public WrapperMethod getMethod(int index) {
+        return methods[index];
+    }
+
+    public Method getAttachMethod() {
+        return methodAttach;
+    }
+
+    public Method getDetachMethod() {
+        return methodDetach;
+    }
+
+    public Field[] getComputerListFields() {
+        return computerListFields;
+    }
+
+    public Class<? extends IMount>[] getMountClasses() {
+        return mountClasses;
+    }
+
+    public Class<? extends IMountFactory>[] getMountFactoryClasses() {
+        return mountFactoryClasses;
+    }
+
+    public boolean isMountShared() {
+        return mountShared;
+    }
+
+    public String getMountKey() {
+        return mountKey;
+    }
+
+    public boolean isMountCached() {
+        return mountCached;
+    }
+
+    private static void wrapMethod(LinkedHashMap<String, WrapperMethod> methods, Method method) {
+        final Function annotation = method.getAnnotation(Function.class);
+        // extract the method name either from the annotation or the actual name
+        final String name = annotation.value().trim().isEmpty() ? method.getName() : annotation.value().trim();
+        // make sure it doesn't already exist
+        Preconditions.checkArgument(!methods.containsKey(name), "Duplicate method found " + name + ". Either make use of the name in the LuaFunction annotation, or if these methods do the same purpose use the Alias annotation instead.");
+        // wrap and store the method
+        final WrapperMethod wrapper = new WrapperMethod(method);
+        methods.put(name, wrapper);
+        // add Alias references too
+        if (method.isAnnotationPresent(Alias.class)) {
+            for (String alias : method.getAnnotation(Alias.class).value()) {
+                Preconditions.checkArgument(!methods.containsKey(alias), "Duplicate method found while attempting to apply Alias " + alias);
+                methods.put(alias, wrapper);
+            }
+        }
+    }
+
+    private static Method checkEventMethod(final Method m, String type) {
+        if (m == null) return null;
+        final Class<?>[] params = m.getParameterTypes();
+        if (params.length == 0) return m;
+        final boolean valid = params.length == 1 && IComputerAccess.class.isAssignableFrom(params[0]);
+        Preconditions.checkArgument(valid, type + " method can only have one parameters of type IComputerAccess");
+        return m;
+    }
+}
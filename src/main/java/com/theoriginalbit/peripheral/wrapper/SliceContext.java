@@ -0,0 +1,108 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.wrapper;
+
+import com.theoriginalbit.peripheral.PeripheralFramework;
+import com.theoriginalbit.peripheral.api.converter.IConversionRegistry;
+import com.theoriginalbit.peripheral.api.lua.ISliceContext;
+import com.theoriginalbit.peripheral.api.util.TypeConversionException;
+import com.theoriginalbit.peripheral.task.CallWatchdog;
+import dan200.computercraft.api.lua.ILuaContext;
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Yields by queueing a resume event on the computer and pulling it, which gives the computer's thread back to
+ * ComputerCraft until the event is handled.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+class SliceContext implements ISliceContext {
+    public static final long SLICE_LENGTH = TimeUnit.MILLISECONDS.toNanos(50);
+    public static final String RESUME_EVENT = "peripheral_resume";
+    public static final String PROGRESS_EVENT = "peripheral_progress";
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private final IComputerAccess computer;
+    private final ILuaContext context;
+    private final AtomicLong yieldCount;
+    private long sliceStart = System.nanoTime();
+
+    SliceContext(IComputerAccess computer, ILuaContext context, AtomicLong yieldCount) {
+        this.computer = computer;
+        this.context = context;
+        this.yieldCount = yieldCount;
+    }
+
+    @Override
+    public boolean shouldYield() {
+        return System.nanoTime() - sliceStart >= SLICE_LENGTH;
+    }
+
+    @Override
+    public void checkpoint() throws LuaException, InterruptedException {
+        if (shouldYield()) {
+            nextSlice();
+        }
+    }
+
+    @Override
+    public void nextSlice() throws LuaException, InterruptedException {
+        final long id = IDS.incrementAndGet();
+        final CallWatchdog watchdog = PeripheralFramework.getCallWatchdog();
+        computer.queueEvent(RESUME_EVENT, new Object[]{id});
+        watchdog.suspendCurrent();
+        boolean terminated = false;
+        try {
+            // waits the way ComputerCraft waits for a main thread task, only a terminate gets through the filter
+            while (true) {
+                final Object[] event = context.pullEventRaw(RESUME_EVENT);
+                if (event.length >= 1 && "terminate".equals(event[0])) {
+                    // the resume is already queued, take it so the program isn't left a stray one
+                    terminated = true;
+                } else if (event.length >= 2 && event[1] instanceof Number && ((Number) event[1]).longValue() == id) {
+                    break;
+                }
+            }
+        } finally {
+            watchdog.resumeCurrent();
+        }
+        if (terminated) {
+            throw new LuaException("Terminated", 0);
+        }
+        yieldCount.incrementAndGet();
+        sliceStart = System.nanoTime();
+    }
+
+    @Override
+    public void progress(Object... args) throws LuaException {
+        final IConversionRegistry conversionRegistry = PeripheralFramework.getConversionRegistry();
+        final Object[] event = new Object[args.length + 1];
+        event[0] = computer.getAttachmentName();
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                event[i + 1] = conversionRegistry.toLua(args[i]);
+            }
+        } catch (TypeConversionException e) {
+            throw new LuaException(e.getMessage());
+        }
+        computer.queueEvent(PROGRESS_EVENT, event);
+    }
+}
@@ -15,39 +15,33 @@
  */
 package com.theoriginalbit.peripheral.wrapper;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.theoriginalbit.peripheral.api.event.Mount;
+import com.theoriginalbit.peripheral.PeripheralFramework;
 import com.theoriginalbit.peripheral.api.filesystem.IMount;
+import com.theoriginalbit.peripheral.api.filesystem.IMountFactory;
+import com.theoriginalbit.peripheral.mount.CachedMount;
+import com.theoriginalbit.peripheral.mount.MountManager;
+import com.theoriginalbit.peripheral.mount.MountPool;
+import com.theoriginalbit.peripheral.util.Log;
 import dan200.computercraft.api.peripheral.IComputerAccess;
 
-import java.lang.reflect.InvocationTargetException;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  * @author Joshua Asbury (@theoriginalbit)
  */
 public class WrapperComputer extends WrapperGeneric {
-    private static final HashMap<Integer, Integer> MOUNT_COUNTS = Maps.newHashMap();
     private final ArrayList<IMount> mounts = Lists.newArrayList();
+    private final ArrayList<IMountFactory> factories = Lists.newArrayList();
+    private int attachments;
 
     public WrapperComputer(Object peripheral) {
         super(peripheral);
-
-        final Class<?> peripheralClass = peripheral.getClass();
-        if (peripheralClass.isAnnotationPresent(Mount.class)) {
-            final Mount annotationMount = peripheralClass.getAnnotation(Mount.class);
-
-            // Build the specified mount classes
-            for (Class<? extends IMount> clazz : annotationMount.value()) {
-                try {
-                    final IMount mount = clazz.newInstance();
-                    mounts.add(mount);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+        if (!model.isLazy()) {
+            materialize();
         }
     }
 
@@ -55,75 +49,113 @@ public class WrapperComputer extends WrapperGeneric {
     public void attach(IComputerAccess computer) {
         super.attach(computer);
 
-        // mount anything required to this computer
-        if (mounts.isEmpty()) {
-            return;
-        }
-
-        if (methodAttach != null) {
-            try {
-                methodAttach.invoke(null);
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
-            } catch (InvocationTargetException e) {
-                e.printStackTrace();
+        synchronized (mounts) {
+            // the first computer attached, take the shared mounts from the pool or build this peripheral's own
+            if (attachments++ == 0) {
+                if (model.isMountShared()) {
+                    acquireShared();
+                } else {
+                    build();
+                }
             }
-        }
-
-        final int id = computer.getID();
 
-        // make an entry for this computer if there isn't one
-        if (!MOUNT_COUNTS.containsKey(id)) {
-            MOUNT_COUNTS.put(id, 0);
-        }
-
-        // perform the mount if needed
-        int count = MOUNT_COUNTS.get(id);
-        if (count++ == 0) {
+            // mount anything required to this computer, the manager only mounts locations that aren't already
+            final MountManager manager = PeripheralFramework.getMountManager();
             for (IMount mount : mounts) {
-                computer.mount(mount.getMountLocation(), mount);
+                // the cache is keyed by the wrapped mount, a wrapper per attach still shares the cached blocks
+                final IMount mounted = model.isMountCached()
+                        ? CachedMount.wrap(mount, PeripheralFramework.getBlockCache()) : mount;
+                manager.acquire(computer, model.getType(), mounted);
+            }
+            for (IMountFactory factory : factories) {
+                manager.acquire(computer, model.getType(), factory);
             }
         }
-        // remember how many peripherals are attached to this computer
-        MOUNT_COUNTS.put(id, count);
     }
 
     @Override
     public void detach(IComputerAccess computer) {
         super.detach(computer);
 
-        // un-mount anything required to this computer
-        if (mounts.isEmpty()) {
-            return;
+        synchronized (mounts) {
+            // un-mount anything required to this computer, the manager only un-mounts locations nothing else uses
+            final MountManager manager = PeripheralFramework.getMountManager();
+            for (IMount mount : mounts) {
+                manager.release(computer, mount);
+            }
+            for (IMountFactory factory : factories) {
+                manager.release(computer, factory);
+            }
+
+            // the last computer detached, hand the shared mounts back to the pool and close our own, the next attach
+            // takes them again
+            if (--attachments == 0) {
+                if (model.isMountShared()) {
+                    releaseShared();
+                } else {
+                    close();
+                }
+                mounts.clear();
+                factories.clear();
+            }
         }
+    }
 
-        if (methodDetach != null) {
+    private void build() {
+        for (Class<? extends IMount> clazz : model.getMountClasses()) {
             try {
-                methodDetach.invoke(null);
-            } catch (IllegalAccessException e) {
+                mounts.add(clazz.newInstance());
+            } catch (Exception e) {
                 e.printStackTrace();
-            } catch (InvocationTargetException e) {
+            }
+        }
+        for (Class<? extends IMountFactory> clazz : model.getMountFactoryClasses()) {
+            try {
+                factories.add(clazz.newInstance());
+            } catch (Exception e) {
                 e.printStackTrace();
             }
         }
+    }
 
-        final int id = computer.getID();
-
-        // if there is no entry for this computer something has gon seriously wrong, but lets ignore it
-        if (!MOUNT_COUNTS.containsKey(id)) {
-            return;
+    private void close() {
+        // mounts reading jars or mapping files hold their handles until closed
+        for (Object mount : Iterables.concat(mounts, factories)) {
+            if (mount instanceof Closeable) {
+                try {
+                    ((Closeable) mount).close();
+                } catch (IOException e) {
+                    Log.warn("Failed to close mount %s: %s", mount, e.getMessage());
+                }
+            }
         }
+    }
 
-        // if it was the last peripheral mounted to the computer, un-mount the mounts
-        int count = MOUNT_COUNTS.get(id);
-        if (--count == 0) {
-            for (IMount mount : mounts) {
-                computer.mount(mount.getMountLocation(), mount);
-                computer.unmount(mount.getMountLocation());
+    private void acquireShared() {
+        final MountPool pool = PeripheralFramework.getMountPool();
+        for (Class<? extends IMount> clazz : model.getMountClasses()) {
+            try {
+                mounts.add(pool.acquire(clazz, model.getMountKey()));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        for (Class<? extends IMountFactory> clazz : model.getMountFactoryClasses()) {
+            try {
+                factories.add(pool.acquire(clazz, model.getMountKey()));
+            } catch (Exception e) {
+                e.printStackTrace();
             }
         }
-        // remember how many peripherals are attached to this computer
-        MOUNT_COUNTS.put(id, count);
     }
 
+    private void releaseShared() {
+        final MountPool pool = PeripheralFramework.getMountPool();
+        for (IMount mount : mounts) {
+            pool.release(mount);
+        }
+        for (IMountFactory factory : factories) {
+            pool.release(factory);
+        }
+    }
 }
@@ -15,16 +15,9 @@
  */
 package com.theoriginalbit.peripheral.wrapper;
 
-import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.theoriginalbit.peripheral.api.event.Attach;
-import com.theoriginalbit.peripheral.api.event.ComputerList;
-import com.theoriginalbit.peripheral.api.event.Detach;
-import com.theoriginalbit.peripheral.api.lua.Alias;
-import com.theoriginalbit.peripheral.api.lua.Function;
-import com.theoriginalbit.peripheral.api.peripheral.Peripheral;
-import com.theoriginalbit.peripheral.util.Validation;
+import com.theoriginalbit.peripheral.PeripheralFramework;
+import com.theoriginalbit.peripheral.api.util.AttachedComputers;
 import dan200.computercraft.api.lua.ILuaContext;
 import dan200.computercraft.api.lua.LuaException;
 import dan200.computercraft.api.peripheral.IComputerAccess;
@@ -35,61 +28,21 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.Set;
 
 /**
  * @author Joshua Asbury (@theoriginalbit)
  */
 class WrapperGeneric implements IPeripheral {
     protected final Object instance;
-    protected final String peripheralType;
-    protected final LinkedHashMap<String, WrapperMethod> methods = Maps.newLinkedHashMap();
-    protected final String[] methodNames;
-    protected final Method methodAttach;
-    protected final Method methodDetach;
-    protected final ArrayList<IComputerAccess> computers = Lists.newArrayList();
+    protected final PeripheralModel model;
+    protected final AttachedComputers computers = new AttachedComputers(PeripheralFramework.getConversionRegistry(),
+            PeripheralFramework.getEventDispatcher());
+    private volatile boolean materialized;
 
     public WrapperGeneric(Object peripheral) {
-        final Class<?> peripheralClass = peripheral.getClass();
-        final Peripheral peripheralLua = peripheralClass.getAnnotation(Peripheral.class);
-
-        // validate the peripheral type
-        final String pname = peripheralLua.value().trim();
-        Preconditions.checkArgument(!pname.isEmpty(), "Peripheral name cannot be an empty string");
-
-        Method attach = null, detach = null;
-        for (Method m : peripheralClass.getMethods()) {
-            if (Validation.isEnabled(m)) {
-                wrapMethod(peripheral, m);
-            } else if (m.isAnnotationPresent(Alias.class)) {
-                throw new RuntimeException("Alias annotations should only occur on LuaFunction annotated methods");
-            }
-            if (m.isAnnotationPresent(Attach.class)) {
-                attach = m;
-            }
-            if (m.isAnnotationPresent(Detach.class)) {
-                detach = m;
-            }
-        }
-
-        // check for the @Computer fields and assign them to this instances computer list
-        for (Field f : peripheralClass.getDeclaredFields()) {
-            if (f.isAnnotationPresent(ComputerList.class)) {
-                try {
-                    f.set(peripheral, computers);
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
         instance = peripheral;
-        peripheralType = pname;
-        methodAttach = checkEventMethod(attach, "@Computers.Attach");
-        methodDetach = checkEventMethod(detach, "@Computers.Detach");
-        Set<String> keys = methods.keySet();
-        methodNames = keys.toArray(new String[keys.size()]);
+        // the type and method names come from the shared model, nothing else is needed until the first call
+        model = PeripheralModel.of(peripheral.getClass());
     }
 
     public final Object getInstance() {
@@ -98,12 +51,12 @@ class WrapperGeneric implements IPeripheral {
 
     @Override
     public String getType() {
-        return peripheralType;
+        return model.getType();
     }
 
     @Override
     public String[] getMethodNames() {
-        return methodNames;
+        return model.getMethodNames();
     }
 
     @Override
@@ -114,41 +67,25 @@ class WrapperGeneric implements IPeripheral {
                 throw new LuaException("peripheral no longer exists");
             }
         }
-        final String name = methodNames[methodIdx];
-        final WrapperMethod method = methods.get(name);
-        return method.invoke(computer, context, arguments);
+        materialize();
+        return model.getMethod(methodIdx).invoke(instance, computer, context, arguments);
     }
 
     @Override
     public void attach(IComputerAccess computer) {
-        if (!computers.contains(computer)) {
-            computers.add(computer);
-        }
-        if (methodAttach != null) {
-            try {
-                methodAttach.invoke(instance, computer);
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
-            } catch (InvocationTargetException e) {
-                e.printStackTrace();
-            }
+        materialize();
+        if (computers.attach(computer)) {
+            updateLegacyFields();
         }
+        invokeEventMethod(model.getAttachMethod(), computer);
     }
 
     @Override
     public void detach(IComputerAccess computer) {
-        if (computers.contains(computer)) {
-            computers.remove(computer);
-        }
-        if (methodDetach != null) {
-            try {
-                methodDetach.invoke(instance, computer);
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
-            } catch (InvocationTargetException e) {
-                e.printStackTrace();
-            }
+        if (computers.detach(computer)) {
+            updateLegacyFields();
         }
+        invokeEventMethod(model.getDetachMethod(), computer);
     }
 
     /*
@@ -159,30 +96,65 @@ class WrapperGeneric implements IPeripheral {
         return super.equals(other);
     }
 
-    private void wrapMethod(Object peripheral, Method method) {
-        final Function annotation = method.getAnnotation(Function.class);
-        // extract the method name either from the annotation or the actual name
-        final String name = annotation.value().trim().isEmpty() ? method.getName() : annotation.value().trim();
-        // make sure it doesn't already exist
-        Preconditions.checkArgument(!methods.containsKey(name), "Duplicate method found " + name + ". Either make use of the name in the LuaFunction annotation, or if these methods do the same purpose use the Alias annotation instead.");
-        // wrap and store the method
-        final WrapperMethod wrapper = new WrapperMethod(peripheral, method);
-        methods.put(name, wrapper);
-        // add Alias references too
-        if (method.isAnnotationPresent(Alias.class)) {
-            for (String alias : method.getAnnotation(Alias.class).value()) {
-                Preconditions.checkArgument(!methods.containsKey(alias), "Duplicate method found while attempting to apply Alias " + alias);
-                methods.put(alias, wrapper);
+    /**
+     * Performs the per-instance setup of this wrapper if it hasn't been done yet. Eager wrappers should do this once
+     * they are constructed, lazy wrappers do it on their first attach or method call.
+     */
+    protected final void materialize() {
+        if (materialized) {
+            return;
+        }
+        synchronized (this) {
+            if (!materialized) {
+                onMaterialize();
+                materialized = true;
             }
         }
     }
 
-    private Method checkEventMethod(final Method m, String type) {
-        if (m == null) return null;
-        final Class<?>[] params = m.getParameterTypes();
-        if (params.length == 0) return m;
-        final boolean valid = params.length == 1 && IComputerAccess.class.isAssignableFrom(params[0]);
-        Preconditions.checkArgument(valid, type + " method can only have one parameters of type IComputerAccess");
-        return m;
+    protected void onMaterialize() {
+        // assign the @ComputerList fields to this instances computer list
+        for (Field f : model.getComputerListFields()) {
+            try {
+                f.set(instance, f.getType() == ArrayList.class ? Lists.newArrayList(computers) : computers);
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * ArrayList fields can't hold the concurrent list, they are given a new copy on every change instead so code
+     * iterating the previous copy is never disturbed. The copy and the assignment happen under one lock, otherwise a
+     * copy taken before a concurrent attach or detach could be assigned after it and go stale
+     */
+    private synchronized void updateLegacyFields() {
+        for (Field f : model.getComputerListFields()) {
+            if (f.getType() != ArrayList.class) {
+                continue;
+            }
+            try {
+                f.set(instance, Lists.newArrayList(computers));
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void invokeEventMethod(Method method, IComputerAccess computer) {
+        if (method == null) {
+            return;
+        }
+        try {
+            if (method.getParameterTypes().length == 0) {
+                method.invoke(instance);
+            } else {
+                method.invoke(instance, computer);
+            }
+        } catch (IllegalAccessException e) {
+            e.printStackTrace();
+        } catch (InvocationTargetException e) {
+            e.printStackTrace();
+        }
     }
 }
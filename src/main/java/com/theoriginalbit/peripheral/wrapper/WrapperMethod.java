@@ -19,74 +19,265 @@ import com.google.common.base.Preconditions;
 import com.theoriginalbit.peripheral.PeripheralFramework;
 import com.theoriginalbit.peripheral.api.converter.IConversionRegistry;
 import com.theoriginalbit.peripheral.api.lua.Function;
+import com.theoriginalbit.peripheral.api.lua.ISliceContext;
+import com.theoriginalbit.peripheral.api.lua.MainThread;
+import com.theoriginalbit.peripheral.api.lua.Offload;
+import com.theoriginalbit.peripheral.api.lua.Timeout;
 import com.theoriginalbit.peripheral.api.util.MultiReturn;
 import com.theoriginalbit.peripheral.api.util.TypeConversionException;
+import com.theoriginalbit.peripheral.task.CallWatchdog;
+import com.theoriginalbit.peripheral.task.FutureTasks;
+import com.theoriginalbit.peripheral.task.MainThreadExecutor;
 import dan200.computercraft.api.lua.ILuaContext;
+import dan200.computercraft.api.lua.ILuaTask;
 import dan200.computercraft.api.lua.LuaException;
 import dan200.computercraft.api.peripheral.IComputerAccess;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Joshua Asbury (@theoriginalbit)
  */
 public class WrapperMethod {
     private final Method method;
-    private final Object instance;
     private final int luaParamsCount;
     private final Class<?>[] javaParams;
     private final boolean isMultiReturn;
+    private final boolean isFuture;
+    private final boolean takesContext;
+    private final long timeout;
+    private final MainThread mainThread;
+    private final boolean offload;
+    private final AtomicLong mainThreadCalls = new AtomicLong();
+    private final AtomicLong mainThreadNanos = new AtomicLong();
+    private final AtomicLong mainThreadMaxNanos = new AtomicLong();
+    private final AtomicLong sliceYields = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
 
-    public WrapperMethod(Object peripheral, Method m) {
+    public WrapperMethod(Method m) {
         // why? just 'cause
         Preconditions.checkArgument(m.isAnnotationPresent(Function.class));
 
-        instance = peripheral;
         method = m;
         javaParams = method.getParameterTypes();
         isMultiReturn = MultiReturn.class.isAssignableFrom(m.getReturnType());
+        isFuture = Future.class.isAssignableFrom(m.getReturnType());
+        final Timeout t = m.getAnnotation(Timeout.class);
+        timeout = t == null ? 0 : t.unit().toNanos(t.value());
+        mainThread = m.getAnnotation(MainThread.class);
+        offload = m.isAnnotationPresent(Offload.class);
 
         // count how many parameters are required from Lua
         int count = javaParams.length;
+        boolean context = false;
         for (Class<?> clazz : javaParams) {
             if (IComputerAccess.class.isAssignableFrom(clazz)) {
                 --count;
             } else if (ILuaContext.class.isAssignableFrom(clazz)) {
+                context = true;
+                --count;
+            } else if (ISliceContext.class.isAssignableFrom(clazz)) {
                 --count;
             }
         }
 
         luaParamsCount = count;
+        takesContext = context;
+
+        // the context can only pull events and yield from the computer's thread
+        if (mainThread != null || offload) {
+            Preconditions.checkArgument(mainThread == null || !offload,
+                    "method %s cannot be both MainThread and Offload", m.getName());
+            // the future is waited for from the computer's thread
+            Preconditions.checkArgument(!isFuture,
+                    "%s method %s cannot return a Future", offload ? "Offload" : "MainThread", m.getName());
+            for (Class<?> clazz : javaParams) {
+                Preconditions.checkArgument(!ILuaContext.class.isAssignableFrom(clazz) && !ISliceContext.class.isAssignableFrom(clazz),
+                        "%s method %s cannot take an ILuaContext or ISliceContext", offload ? "Offload" : "MainThread", m.getName());
+            }
+        }
     }
 
-    public Object[] invoke(IComputerAccess access, ILuaContext context, Object[] arguments) throws LuaException,
-            InterruptedException {
+    public Object[] invoke(final Object instance, IComputerAccess access, ILuaContext context, Object[] arguments)
+            throws LuaException, InterruptedException {
         // make sure they've provided enough args
         if (arguments.length != luaParamsCount) {
             throw new LuaException(String.format("expected %d arg(s), got %d", luaParamsCount, arguments.length));
         }
 
-        Object[] args = new Object[javaParams.length];
-        IConversionRegistry conversionRegistry = PeripheralFramework.getConversionRegistry();
+        final Object[] args = toJava(access, context, arguments);
+
+        if (offload) {
+            return PeripheralFramework.getOffloadExecutor().execute(access, context, new ILuaTask() {
+                @Override
+                public Object[] execute() throws LuaException {
+                    return toLua(invokeWatched(instance, args));
+                }
+            });
+        }
+
+        if (isFuture) {
+            final Future<?> future = (Future<?>) invokeWatched(instance, args);
+            if (future == null) {
+                return new Object[]{null};
+            }
+            return toLua(FutureTasks.await(access, context, future, timeout));
+        }
+
+        if (mainThread == null) {
+            return toLua(invokeWatched(instance, args));
+        }
+
+        // only the method itself runs on the server thread, the arguments are already converted. It isn't watched as
+        // interrupting the server thread isn't safe, the executor's budget keeps the tick in check instead
+        final ILuaTask task = new ILuaTask() {
+            @Override
+            public Object[] execute() throws LuaException {
+                final long start = System.nanoTime();
+                try {
+                    return call(instance, args);
+                } finally {
+                    recordMainThread(System.nanoTime() - start);
+                }
+            }
+        };
+        final MainThreadExecutor executor = PeripheralFramework.getMainThreadExecutor();
+        if (mainThread.async()) {
+            return new Object[]{executor.submit(access, task)};
+        }
+        return executor.execute(access, context, task);
+    }
+
+    /**
+     * Builds the arguments of the Java method, the injected parameters don't take a Lua argument so the Lua arguments
+     * are read by their own index rather than the Java parameter's
+     */
+    private Object[] toJava(IComputerAccess access, ILuaContext context, Object[] arguments) throws LuaException {
+        final Object[] args = new Object[javaParams.length];
+        final IConversionRegistry conversionRegistry = PeripheralFramework.getConversionRegistry();
 
         try {
+            int luaIndex = 0;
             for (int i = 0; i < args.length; ++i) {
                 if (IComputerAccess.class.isAssignableFrom(javaParams[i])) {
                     args[i] = access;
                 } else if (ILuaContext.class.isAssignableFrom(javaParams[i])) {
                     args[i] = context;
+                } else if (ISliceContext.class.isAssignableFrom(javaParams[i])) {
+                    args[i] = new SliceContext(access, context, sliceYields);
                 } else {
-                    args[i] = conversionRegistry.toJava(arguments[i], javaParams[i]);
+                    args[i] = conversionRegistry.toJava(arguments[luaIndex++], javaParams[i]);
                 }
             }
         } catch (TypeConversionException e) {
             throw new LuaException(e.getMessage());
         }
+        return args;
+    }
+
+    public boolean isMainThread() {
+        return mainThread != null;
+    }
+
+    public boolean isOffload() {
+        return offload;
+    }
+
+    /**
+     * @return how many times the method has run on the server thread
+     */
+    public long getMainThreadCalls() {
+        return mainThreadCalls.get();
+    }
+
+    /**
+     * @return the total nanoseconds the method has spent on the server thread
+     */
+    public long getMainThreadNanos() {
+        return mainThreadNanos.get();
+    }
+
+    /**
+     * @return the longest single run of the method on the server thread, in nanoseconds
+     */
+    public long getMainThreadMaxNanos() {
+        return mainThreadMaxNanos.get();
+    }
+
+    /**
+     * @return how many times calls of the method have yielded through their ISliceContext
+     */
+    public long getSliceYields() {
+        return sliceYields.get();
+    }
+
+    /**
+     * @return how many calls of the method were interrupted for running past their deadline
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    private void recordMainThread(long nanos) {
+        mainThreadCalls.incrementAndGet();
+        mainThreadNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = mainThreadMaxNanos.get()) && !mainThreadMaxNanos.compareAndSet(max, nanos)) {
+            // another call recorded a new max, compare against that
+        }
+    }
+
+    private Object[] call(Object instance, Object[] args) throws LuaException {
+        return toLua(invokeMethod(instance, args));
+    }
+
+    private Object[] toLua(Object value) throws LuaException {
+        try {
+            Object result = PeripheralFramework.getConversionRegistry().toLua(value);
+            return isMultiReturn || value instanceof MultiReturn ? (Object[]) result : new Object[]{result};
+        } catch (Exception e) {
+            throw new LuaException(e.getMessage());
+        }
+    }
+
+    /**
+     * Invokes the method under the watchdog, if it runs past its deadline it is interrupted and errors
+     */
+    private Object invokeWatched(Object instance, Object[] args) throws LuaException {
+        final CallWatchdog watchdog = PeripheralFramework.getCallWatchdog();
+        final long deadline = timeout > 0 ? timeout : takesContext ? 0 : watchdog.getDefaultDeadline();
+        if (deadline <= 0) {
+            return invokeMethod(instance, args);
+        }
+
+        final CallWatchdog.Call call = watchdog.start(method.getDeclaringClass().getName() + "." + method.getName(), deadline);
+        Object result = null;
+        LuaException error = null;
+        boolean timedOut;
+        try {
+            result = invokeMethod(instance, args);
+        } catch (LuaException e) {
+            error = e;
+        } finally {
+            timedOut = call.finish();
+        }
+        if (timedOut) {
+            timeouts.incrementAndGet();
+            throw new LuaException(String.format("%s timed out after %d ms", method.getName(), TimeUnit.NANOSECONDS.toMillis(deadline)));
+        }
+        if (error != null) {
+            throw error;
+        }
+        return result;
+    }
 
+    private Object invokeMethod(Object instance, Object[] args) throws LuaException {
         try {
-            Object result = conversionRegistry.toLua(method.invoke(instance, args));
-            return isMultiReturn ? (Object[]) result : new Object[]{result};
+            return method.invoke(instance, args);
         } catch (IllegalAccessException e) {
             e.printStackTrace();
             throw new LuaException("Developer problem, please present your client log file to the developer of this peripheral.");
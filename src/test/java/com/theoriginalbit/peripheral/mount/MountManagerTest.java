@@ -0,0 +1,321 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.io.ByteStreams;
+import com.theoriginalbit.peripheral.api.filesystem.IMount;
+import com.theoriginalbit.peripheral.api.filesystem.IMountFactory;
+import dan200.computercraft.api.filesystem.IWritableMount;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Attaches and detaches many peripherals to many computers from several threads at once and checks every mount is
+ * balanced by an unmount on the same peripheral, and every created mount is released to its factory.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public class MountManagerTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 20000;
+    private static final int COMPUTERS = 64;
+    private static final int PERIPHERALS = 4;
+
+    private final AtomicInteger mounts = new AtomicInteger();
+    private final AtomicInteger unmounts = new AtomicInteger();
+    private final AtomicReference<String> problem = new AtomicReference<String>();
+
+    @Test
+    public void testConcurrentAttachDetachBalances() throws Exception {
+        final MountManager manager = new MountManager();
+        final FakeMount mount = new FakeMount("/shared");
+        final FakeFactory factory = new FakeFactory("/scratch");
+
+        final FakeAccess[][] accesses = new FakeAccess[COMPUTERS][PERIPHERALS];
+        for (int id = 0; id < COMPUTERS; ++id) {
+            for (int p = 0; p < PERIPHERALS; ++p) {
+                accesses[id][p] = new FakeAccess(id);
+            }
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; ++t) {
+            final long seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    final Random random = new Random(seed);
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < OPERATIONS; ++i) {
+                        toggle(manager, accesses[random.nextInt(COMPUTERS)][random.nextInt(PERIPHERALS)], mount, factory);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // detach everything that is still attached
+        for (FakeAccess[] computer : accesses) {
+            for (FakeAccess access : computer) {
+                if (access.attached) {
+                    toggle(manager, access, mount, factory);
+                }
+            }
+        }
+
+        assertNull(problem.get(), problem.get());
+        assertEquals(0, manager.getActiveMountCount());
+        assertEquals(manager.getMountCount(), manager.getUnmountCount());
+        assertEquals(mounts.get(), unmounts.get());
+        assertEquals(factory.created.get(), factory.released.get());
+        assertTrue(manager.getMountCount() > 0);
+        for (FakeAccess[] computer : accesses) {
+            for (FakeAccess access : computer) {
+                assertTrue("peripheral of computer " + access.id + " still has mounts", access.mounted.isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void testHandoverToRemainingPeripheral() {
+        final MountManager manager = new MountManager();
+        final FakeMount mount = new FakeMount("/shared");
+        final FakeAccess first = new FakeAccess(1);
+        final FakeAccess second = new FakeAccess(1);
+
+        manager.acquire(first, mount);
+        manager.acquire(second, mount);
+        assertEquals(1, first.mounted.size());
+        assertEquals(0, second.mounted.size());
+
+        manager.release(first, mount);
+        assertEquals(0, first.mounted.size());
+        assertEquals(1, second.mounted.size());
+        assertEquals(1, manager.getHandoverCount());
+        assertEquals(1, manager.getActiveMountCount());
+
+        manager.release(second, mount);
+        assertEquals(0, second.mounted.size());
+        assertEquals(0, manager.getActiveMountCount());
+    }
+
+    @Test
+    public void testCacheHitsAreNotCountedAsReads() throws Exception {
+        final MountManager manager = new MountManager();
+        final FakeAccess access = new FakeAccess(1);
+        final BlockCache cache = new BlockCache(BlockCache.DEFAULT_SIZE);
+        final CachedMount mount = CachedMount.wrap(new DataMount("/data", new byte[100]), cache);
+
+        manager.acquire(access, mount);
+        for (int i = 0; i < 2; ++i) {
+            final InputStream in = access.last.openForRead("file");
+            assertEquals(100, ByteStreams.toByteArray(in).length);
+            in.close();
+        }
+        // the second read is served by the cache and never reaches the mount
+        assertEquals(100, manager.getStatistics().getComputerCounters(1).getBytesRead());
+
+        manager.release(access, mount);
+        assertNull(manager.getStatistics().getComputerCounters(1));
+    }
+
+    private void toggle(MountManager manager, FakeAccess access, FakeMount mount, FakeFactory factory) {
+        // ComputerCraft never attaches or detaches the same peripheral from two threads at once
+        synchronized (access) {
+            if (access.attached) {
+                manager.release(access, mount);
+                manager.release(access, factory);
+            } else {
+                manager.acquire(access, mount);
+                manager.acquire(access, factory);
+            }
+            access.attached = !access.attached;
+        }
+    }
+
+    private final class FakeAccess implements IComputerAccess {
+        private final int id;
+        private final Set<String> mounted = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        private boolean attached;
+        private dan200.computercraft.api.filesystem.IMount last;
+
+        private FakeAccess(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public String mount(String desiredLocation, dan200.computercraft.api.filesystem.IMount mount) {
+            return mount(desiredLocation, mount, null);
+        }
+
+        @Override
+        public String mount(String desiredLocation, dan200.computercraft.api.filesystem.IMount mount, String driveName) {
+            if (!mounted.add(desiredLocation)) {
+                problem.compareAndSet(null, desiredLocation + " mounted twice on computer " + id);
+            }
+            mounts.incrementAndGet();
+            last = mount;
+            return desiredLocation;
+        }
+
+        @Override
+        public String mountWritable(String desiredLocation, IWritableMount mount) {
+            return mount(desiredLocation, mount, null);
+        }
+
+        @Override
+        public String mountWritable(String desiredLocation, IWritableMount mount, String driveName) {
+            return mount(desiredLocation, mount, driveName);
+        }
+
+        @Override
+        public void unmount(String location) {
+            if (!mounted.remove(location)) {
+                problem.compareAndSet(null, location + " unmounted by a peripheral that didn't mount it on computer " + id);
+            }
+            unmounts.incrementAndGet();
+        }
+
+        @Override
+        public int getID() {
+            return id;
+        }
+
+        @Override
+        public void queueEvent(String event, Object[] arguments) {
+        }
+
+        @Override
+        public String getAttachmentName() {
+            return "test";
+        }
+    }
+
+    private static class FakeMount implements IMount {
+        private final String location;
+
+        private FakeMount(String location) {
+            this.location = location;
+        }
+
+        @Override
+        public String getMountLocation() {
+            return location;
+        }
+
+        @Override
+        public boolean exists(String path) {
+            return path.isEmpty();
+        }
+
+        @Override
+        public boolean isDirectory(String path) {
+            return path.isEmpty();
+        }
+
+        @Override
+        public void list(String path, List<String> contents) {
+        }
+
+        @Override
+        public long getSize(String path) {
+            return 0;
+        }
+
+        @Override
+        public InputStream openForRead(String path) throws IOException {
+            throw new IOException("No such file");
+        }
+    }
+
+    private static final class DataMount extends FakeMount {
+        private final byte[] data;
+
+        private DataMount(String location, byte[] data) {
+            super(location);
+            this.data = data;
+        }
+
+        @Override
+        public boolean exists(String path) {
+            return path.isEmpty() || path.equals("file");
+        }
+
+        @Override
+        public long getSize(String path) {
+            return path.equals("file") ? data.length : 0;
+        }
+
+        @Override
+        public InputStream openForRead(String path) throws IOException {
+            if (!path.equals("file")) {
+                throw new IOException("No such file");
+            }
+            return new ByteArrayInputStream(data);
+        }
+    }
+
+    private static final class FakeFactory implements IMountFactory {
+        private final String location;
+        private final AtomicInteger created = new AtomicInteger();
+        private final AtomicInteger released = new AtomicInteger();
+
+        private FakeFactory(String location) {
+            this.location = location;
+        }
+
+        @Override
+        public String getMountLocation() {
+            return location;
+        }
+
+        @Override
+        public dan200.computercraft.api.filesystem.IMount createMount(IComputerAccess computer) {
+            created.incrementAndGet();
+            return new FakeMount(location);
+        }
+
+        @Override
+        public void releaseMount(IComputerAccess computer, dan200.computercraft.api.filesystem.IMount mount) {
+            released.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that shared mounts are closed once nothing references them, and only then.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public class MountPoolTest {
+    private MountPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new MountPool();
+    }
+
+    @Test
+    public void testReleasedMountIsClosed() throws Exception {
+        pool.setIdleDelay(0);
+        final FakeMount first = pool.acquire(FakeMount.class, "a");
+        assertSame(first, pool.acquire(FakeMount.class, "a"));
+
+        pool.release(first);
+        assertFalse(first.closed);
+        pool.release(first);
+        assertTrue(first.closed);
+        assertEquals(0, pool.getPooledCount());
+        assertEquals(1, pool.getEvictedCount());
+
+        assertNotSame(first, pool.acquire(FakeMount.class, "a"));
+    }
+
+    @Test
+    public void testIdleMountIsKeptForTheDelay() throws Exception {
+        pool.setIdleDelay(TimeUnit.HOURS.toNanos(1));
+        final FakeMount first = pool.acquire(FakeMount.class, "a");
+        pool.release(first);
+        pool.evictIdle();
+        assertFalse(first.closed);
+        assertEquals(1, pool.getIdleCount());
+
+        assertSame(first, pool.acquire(FakeMount.class, "a"));
+        assertEquals(1, pool.getReusedCount());
+    }
+
+    public static class FakeMount implements Closeable {
+        private boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
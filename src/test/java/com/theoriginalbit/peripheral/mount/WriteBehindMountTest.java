@@ -0,0 +1,161 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.mount;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that what is written through the mount is on disk after a flush, and that a failed flush loses nothing.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public class WriteBehindMountTest {
+    private File temp;
+    private File directory;
+
+    @Before
+    public void setUp() {
+        temp = Files.createTempDir();
+        directory = new File(temp, "computer");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        delete(temp);
+    }
+
+    @Test
+    public void testFlushedWritesSurviveReopen() throws IOException {
+        final WriteBehindMount mount = create(1024);
+        write(mount.openForWrite("notes/a.txt"), "hello");
+        write(mount.openForAppend("notes/a.txt"), " world");
+        write(mount.openForWrite("b.txt"), "first");
+        write(mount.openForWrite("b.txt"), "second");
+        assertEquals(2, mount.getCoalescedCount());
+
+        // pending changes are visible before they are on disk
+        assertEquals("hello world", read(mount, "notes/a.txt"));
+        assertFalse(new File(directory, "b.txt").exists());
+
+        mount.flush();
+        mount.close();
+        assertEquals("hello world", Files.toString(new File(directory, "notes/a.txt"), Charsets.UTF_8));
+
+        final WriteBehindMount reopened = create(1024);
+        assertEquals("hello world", read(reopened, "notes/a.txt"));
+        assertEquals("second", read(reopened, "b.txt"));
+        assertEquals(11, reopened.getSize("notes/a.txt"));
+        assertEquals(17, reopened.getUsedSpace());
+
+        write(reopened.openForAppend("b.txt"), "!");
+        reopened.close();
+        assertEquals("second!", read(create(1024), "b.txt"));
+    }
+
+    @Test
+    public void testFailedFlushKeepsChanges() throws IOException {
+        final WriteBehindMount mount = create(1024);
+        write(mount.openForWrite("a.txt"), "kept");
+
+        // put a non-empty directory where the file goes so it can't be replaced
+        final File blocker = new File(directory, "a.txt");
+        assertTrue(new File(blocker, "child").mkdirs());
+        try {
+            mount.flush();
+            fail("flush should have failed");
+        } catch (IOException expected) {
+            // the change stays pending
+        }
+        assertEquals(1, mount.getFailedCount());
+        assertTrue(mount.exists("a.txt"));
+        assertEquals("kept", read(mount, "a.txt"));
+
+        // an append after the failure continues the failed change
+        delete(blocker);
+        write(mount.openForAppend("a.txt"), " all");
+        mount.flush();
+        assertEquals("kept all", Files.toString(new File(directory, "a.txt"), Charsets.UTF_8));
+        assertEquals("kept all", read(create(1024), "a.txt"));
+    }
+
+    @Test
+    public void testCapacityIsEnforced() throws IOException {
+        final WriteBehindMount mount = create(10);
+        write(mount.openForWrite("a.txt"), "12345678");
+        try {
+            write(mount.openForAppend("a.txt"), "abc");
+            fail("the append should not fit");
+        } catch (IOException expected) {
+            assertEquals("Out of space", expected.getMessage());
+        }
+        // rewriting the file frees its old content
+        write(mount.openForWrite("a.txt"), "1234567890");
+        assertEquals(0, mount.getRemainingSpace());
+        mount.flush();
+        assertEquals("1234567890", read(mount, "a.txt"));
+    }
+
+    private WriteBehindMount create(long capacity) {
+        return new WriteBehindMount("test", directory, capacity) {
+        };
+    }
+
+    private static void write(OutputStream stream, String content) throws IOException {
+        try {
+            stream.write(content.getBytes(Charsets.UTF_8));
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static String read(WriteBehindMount mount, String path) throws IOException {
+        final InputStream stream = mount.openForRead(path);
+        try {
+            return new String(ByteStreams.toByteArray(stream), Charsets.UTF_8);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static void delete(File file) throws IOException {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file);
+        }
+    }
+}
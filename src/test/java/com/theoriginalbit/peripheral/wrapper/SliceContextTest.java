@@ -0,0 +1,160 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.wrapper;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
+import dan200.computercraft.api.filesystem.IMount;
+import dan200.computercraft.api.filesystem.IWritableMount;
+import dan200.computercraft.api.lua.ILuaContext;
+import dan200.computercraft.api.lua.ILuaTask;
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that a slice waits for its own resume event and leaves the computer's queue as it found it.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public class SliceContextTest {
+    private final ArrayDeque<Object[]> events = Queues.newArrayDeque();
+    private final List<Object[]> skipped = Lists.newArrayList();
+    private final AtomicLong yields = new AtomicLong();
+    private SliceContext slice;
+
+    @Before
+    public void setUp() {
+        slice = new SliceContext(new FakeComputer(), new FakeContext(), yields);
+    }
+
+    @Test
+    public void testWaitsForItsOwnResume() throws Exception {
+        events.add(new Object[]{"key", 30});
+        events.add(new Object[]{SliceContext.RESUME_EVENT, -1L});
+        slice.nextSlice();
+        assertEquals(1, yields.get());
+        assertTrue(events.isEmpty());
+        // nothing is queued again, the filter kept the key event from this coroutine only
+        assertEquals(1, skipped.size());
+        assertArrayEquals(new Object[]{"key", 30}, skipped.get(0));
+    }
+
+    @Test
+    public void testTerminateTakesTheResume() throws Exception {
+        events.add(new Object[]{"terminate"});
+        try {
+            slice.nextSlice();
+            fail("terminating while yielded should error");
+        } catch (LuaException e) {
+            assertEquals("Terminated", e.getMessage());
+        }
+        assertEquals(0, yields.get());
+        // no stray resume is left for the program
+        assertTrue(events.isEmpty());
+    }
+
+    private final class FakeComputer implements IComputerAccess {
+        @Override
+        public String mount(String desiredLocation, IMount mount) {
+            return null;
+        }
+
+        @Override
+        public String mount(String desiredLocation, IMount mount, String driveName) {
+            return null;
+        }
+
+        @Override
+        public String mountWritable(String desiredLocation, IWritableMount mount) {
+            return null;
+        }
+
+        @Override
+        public String mountWritable(String desiredLocation, IWritableMount mount, String driveName) {
+            return null;
+        }
+
+        @Override
+        public void unmount(String location) {
+        }
+
+        @Override
+        public int getID() {
+            return 0;
+        }
+
+        @Override
+        public void queueEvent(String event, Object[] arguments) {
+            final Object[] queued = new Object[arguments.length + 1];
+            queued[0] = event;
+            System.arraycopy(arguments, 0, queued, 1, arguments.length);
+            events.add(queued);
+        }
+
+        @Override
+        public String getAttachmentName() {
+            return "test";
+        }
+    }
+
+    private final class FakeContext implements ILuaContext {
+        @Override
+        public Object[] pullEvent(String filter) throws LuaException, InterruptedException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object[] pullEventRaw(String filter) throws InterruptedException {
+            // ComputerCraft only resumes a filtering coroutine for a matching event or a terminate
+            while (true) {
+                final Object[] event = events.poll();
+                if (event == null) {
+                    throw new IllegalStateException("no event left to pull");
+                }
+                if (filter == null || filter.equals(event[0]) || "terminate".equals(event[0])) {
+                    return event;
+                }
+                skipped.add(event);
+            }
+        }
+
+        @Override
+        public Object[] yield(Object[] arguments) throws InterruptedException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object[] executeMainThreadTask(ILuaTask task) throws LuaException, InterruptedException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long issueMainThreadTask(ILuaTask task) throws LuaException {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2014-2015 Joshua Asbury (@theoriginalbit)
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.theoriginalbit.peripheral.wrapper;
+
+import com.theoriginalbit.peripheral.api.lua.Function;
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.api.peripheral.IComputerAccess;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the Lua arguments reach the right Java parameters when injected parameters come before them.
+ *
+ * @author Joshua Asbury (@theoriginalbit)
+ */
+public class WrapperMethodTest {
+    @Test
+    public void testInjectedParameterDoesNotShiftArguments() throws Exception {
+        final WrapperMethod method = new WrapperMethod(Target.class.getMethod("join", IComputerAccess.class, String.class, String.class));
+        final Object[] result = method.invoke(new Target(), null, null, new Object[]{"left", "right"});
+        assertArrayEquals(new Object[]{"left:right"}, result);
+    }
+
+    @Test
+    public void testInjectedParameterIsNotCounted() throws Exception {
+        final WrapperMethod method = new WrapperMethod(Target.class.getMethod("join", IComputerAccess.class, String.class, String.class));
+        try {
+            method.invoke(new Target(), null, null, new Object[]{"left", "right", "extra"});
+            fail("a third argument should have been refused");
+        } catch (LuaException e) {
+            assertEquals("expected 2 arg(s), got 3", e.getMessage());
+        }
+    }
+
+    public static class Target {
+        @Function
+        public String join(IComputerAccess computer, String first, String second) {
+            return first + ":" + second;
+        }
+    }
+}